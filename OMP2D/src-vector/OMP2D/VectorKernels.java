@@ -0,0 +1,129 @@
+/*
+Copyright (c) 2014 Matthew Simons
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package OMP2D;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Kernels written with the incubating Vector API, using the widest vectors the CPU 
+ * supports. Inner products keep one partial sum per lane, combined at the end, which 
+ * removes the dependency between successive additions.
+ * 
+ * This class is kept apart from the other sources, and must be compiled with 
+ * <code>--add-modules jdk.incubator.vector</code> against them, as the 
+ * <code>compile-vector</code> target of <code>build.xml</code> does.
+ * It is only loaded by {@link Kernels} when the JVM was started with the same option.
+ */
+class VectorKernels extends Kernels {
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+	private static final int LANES = SPECIES.length();
+	
+	@Override
+	public double dot(double[] vector1, int offset1, double[] vector2, int offset2, int length) {
+		int bound = SPECIES.loopBound(length);
+		DoubleVector sums = DoubleVector.zero(SPECIES);
+		int i = 0;
+		for(; i < bound; i += LANES) {
+			DoubleVector a = DoubleVector.fromArray(SPECIES, vector1, offset1+i);
+			DoubleVector b = DoubleVector.fromArray(SPECIES, vector2, offset2+i);
+			sums = a.fma(b, sums);
+		}
+		double innerProduct = sums.reduceLanes(VectorOperators.ADD);
+		for(; i < length; i++) {
+			innerProduct += vector1[offset1+i]*vector2[offset2+i];
+		}
+		return innerProduct;
+	}
+
+	@Override
+	public void dotAndNorm(double[] vector1, int offset1, double[] vector2, int offset2, int length, double[] result) {
+		int bound = SPECIES.loopBound(length);
+		DoubleVector sums = DoubleVector.zero(SPECIES);
+		DoubleVector squares = DoubleVector.zero(SPECIES);
+		int i = 0;
+		for(; i < bound; i += LANES) {
+			DoubleVector a = DoubleVector.fromArray(SPECIES, vector1, offset1+i);
+			DoubleVector b = DoubleVector.fromArray(SPECIES, vector2, offset2+i);
+			sums = a.fma(b, sums);
+			squares = b.fma(b, squares);
+		}
+		double innerProduct = sums.reduceLanes(VectorOperators.ADD);
+		double norm = squares.reduceLanes(VectorOperators.ADD);
+		for(; i < length; i++) {
+			double element = vector2[offset2+i];
+			innerProduct += vector1[offset1+i]*element;
+			norm += element*element;
+		}
+		result[0] = innerProduct;
+		result[1] = norm;
+	}
+
+	@Override
+	public void axpy(double a, double[] x, int xOffset, double[] y, int yOffset, int length) {
+		int bound = SPECIES.loopBound(length);
+		DoubleVector as = DoubleVector.broadcast(SPECIES, a);
+		int i = 0;
+		for(; i < bound; i += LANES) {
+			DoubleVector xs = DoubleVector.fromArray(SPECIES, x, xOffset+i);
+			DoubleVector ys = DoubleVector.fromArray(SPECIES, y, yOffset+i);
+			xs.fma(as, ys).intoArray(y, yOffset+i);
+		}
+		for(; i < length; i++) {
+			y[yOffset+i] += a*x[xOffset+i];
+		}
+	}
+
+	@Override
+	public void scale(double[] vector, int offset, int length, double factor) {
+		scaleInto(factor, vector, offset, vector, offset, length);
+	}
+
+	@Override
+	public void scaleInto(double a, double[] x, int xOffset, double[] y, int yOffset, int length) {
+		int bound = SPECIES.loopBound(length);
+		int i = 0;
+		for(; i < bound; i += LANES) {
+			DoubleVector.fromArray(SPECIES, x, xOffset+i).mul(a).intoArray(y, yOffset+i);
+		}
+		for(; i < length; i++) {
+			y[yOffset+i] = a*x[xOffset+i];
+		}
+	}
+
+	@Override
+	public double maxAbs(double[] vector, int offset, int length) {
+		int bound = SPECIES.loopBound(length);
+		DoubleVector maxima = DoubleVector.zero(SPECIES);
+		int i = 0;
+		for(; i < bound; i += LANES) {
+			maxima = maxima.max(DoubleVector.fromArray(SPECIES, vector, offset+i).abs());
+		}
+		double maxAbs = maxima.reduceLanes(VectorOperators.MAX);
+		for(; i < length; i++) {
+			maxAbs = Math.max(maxAbs, Math.abs(vector[offset+i]));
+		}
+		return maxAbs;
+	}
+}
@@ -0,0 +1,340 @@
+/*
+Copyright (c) 2014 Matthew Simons
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package OMP2D;
+
+/**
+ * The state shared by every block solver: the block, the stopping criteria and the 
+ * results, along with the workspace the block is processed in.
+ */
+public abstract class AbstractBlockSolver implements BlockSolver {
+	protected double[] imageData;
+	protected double[] approxData;
+	protected Matrix approxBlock;
+	protected OMP2DWorkspace workspace;
+	protected CorrelationEngine engine = DenseCorrelation.INSTANCE;
+	protected AtomSelector selector = ArgMaxSelector.INSTANCE;
+	protected TerminationPolicy terminationPolicy;
+	protected BlockParallelism parallelism;
+	protected boolean approximationOnly;
+	protected Termination termination;
+	protected double[] coefficients;
+	protected boolean debug;
+	private long startTime;
+	//the number of atoms the residual energy was last recorded for, and the number
+	//at the end of the previous iteration
+	private int recordedAtoms, previousAtoms;
+	
+	protected final double INITIAL_TOL = 1e-10;
+	protected final double TOLERANCE;
+	protected final int MAX_ITERATIONS;
+	protected final int WIDTH;
+	public final int BLOCK_ID;
+	
+	/**
+	 * @param imageData The intensity values of the block
+	 * @param width The width of the block
+	 * @param id The position of the block within the image
+	 * @param tol The tolerance level to be achieved
+	 * @param maxIterations The maximum number of iterations to be done without meeting the tolerance level
+	 */
+	protected AbstractBlockSolver(double[] imageData, int width, int id, double tol, int maxIterations) {
+		this.imageData = imageData;
+
+		TOLERANCE = tol;
+		WIDTH = width;
+		MAX_ITERATIONS = maxIterations;
+		BLOCK_ID = id;
+	}
+	
+	/**
+	 * Sets the workspace to be used by {@link #calcBlock()}. If none is set the 
+	 * workspace owned by the calling thread is used.
+	 * @param workspace
+	 */
+	public void setWorkspace(OMP2DWorkspace workspace) {
+		this.workspace = workspace;
+	}
+	
+	/**
+	 * Sets a policy to stop adding atoms before the tolerance or the maximum number of 
+	 * iterations is reached. By default blocks run until one of those is.
+	 * @param terminationPolicy The policy, or null for none
+	 */
+	public void setTerminationPolicy(TerminationPolicy terminationPolicy) {
+		this.terminationPolicy = terminationPolicy;
+	}
+	
+	/**
+	 * Enables extra consistency checks while the block is processed, such as comparing 
+	 * quantities which are tracked incrementally against a full recalculation
+	 * @param debug
+	 */
+	public void setDebug(boolean debug) {
+		this.debug = debug;
+	}
+	
+	/**
+	 * Sets the engine used to calculate the correlations between the atoms and the residue.
+	 * Defaults to {@link DenseCorrelation}.
+	 * @param engine
+	 */
+	public void setCorrelationEngine(CorrelationEngine engine) {
+		this.engine = engine;
+	}
+	
+	/**
+	 * Sets the strategy used to choose the atoms added on each iteration.
+	 * Defaults to {@link ArgMaxSelector}.
+	 * @param selector
+	 */
+	public void setAtomSelector(AtomSelector selector) {
+		this.selector = selector;
+	}
+	
+	/**
+	 * Lets the solver split the row operations of large blocks across a pool, which 
+	 * helps when there are fewer blocks than cores. By default each block runs on the 
+	 * calling thread only.
+	 * @param parallelism The pool and threshold to use, or null to run sequentially
+	 */
+	public void setParallelism(BlockParallelism parallelism) {
+		this.parallelism = parallelism;
+	}
+	
+	/**
+	 * Lets the solver skip any work which is only needed for the coefficients, when
+	 * just the approximation and the number of atoms are wanted. Solvers which skip it 
+	 * calculate the coefficients from the selected atoms if they are asked for them;
+	 * those which need the coefficients to find the approximation ignore this.
+	 * @param approximationOnly
+	 */
+	public void setApproximationOnly(boolean approximationOnly) {
+		this.approximationOnly = approximationOnly;
+	}
+	
+	/**
+	 * @return The maximum number of atoms a block may be approximated with
+	 */
+	protected int getMaxAtoms() {
+		return Math.max(1, MAX_ITERATIONS);
+	}
+	
+	/**
+	 * Calculates the correlations of the residue and selects the atoms to add on 
+	 * this iteration. The correlations are only written to the workspace if the 
+	 * selector needs them, or the engine cannot find the largest while calculating them.
+	 * Dense correlations of large blocks are split across the solver's pool, if it has one.
+	 * @param ws
+	 * @param k The number of atoms selected so far
+	 * @return The number of atoms selected from index k
+	 */
+	protected int findAtoms(OMP2DWorkspace ws, int k) {
+		if(engine instanceof DenseCorrelation && parallelism != null && parallelism.splitsSearch(ws)) {
+			if(!selector.usesCorrelations()) {
+				return selectAtoms(ws, k, parallelism.correlateMaxAbs(ws, k));
+			}
+			parallelism.correlate(ws);
+			return selectAtoms(ws, k, parallelism.findMaxAbs(ws, k));
+		}
+		if(!selector.usesCorrelations() && engine instanceof FusedCorrelationEngine) {
+			double maxAbs = ((FusedCorrelationEngine) engine).correlateMaxAbs(ws, k);
+			return selectAtoms(ws, k, maxAbs);
+		}
+		engine.correlate(ws, k);
+		return selectAtoms(ws, k);
+	}
+	
+	/**
+	 * Finds the largest of the workspace's correlations, recording its atoms at index k, 
+	 * and lets the selector choose the atoms to add on this iteration
+	 * @param ws
+	 * @param k The number of atoms selected so far
+	 * @return The number of atoms selected from index k
+	 */
+	protected int selectAtoms(OMP2DWorkspace ws, int k) {
+		return selectAtoms(ws, k, ws.findMaxAbs(k));
+	}
+	
+	/**
+	 * Lets the selector choose the atoms to add on this iteration, as many as the maximum 
+	 * number of atoms, or the termination policy's {@link TerminationPolicy#atomLimit() limit}, 
+	 * leaves room for
+	 * @param ws
+	 * @param k The number of atoms selected so far
+	 * @param maxAbs The largest correlation, whose atoms are recorded at index k
+	 * @return The number of atoms selected from index k, or 0 if the block is flat
+	 */
+	protected int selectAtoms(OMP2DWorkspace ws, int k, double maxAbs) {
+		if(k == 0 && maxAbs < INITIAL_TOL) {
+			return 0;
+		}
+		int limit = getMaxAtoms();
+		if(terminationPolicy != null) {
+			limit = Math.min(limit, terminationPolicy.atomLimit());
+		}
+		return selector.select(ws, k, limit - k, maxAbs);
+	}
+	
+	/**
+	 * Starts timing the block and records its energy ahead of {@link #isFinished}
+	 * @param ws
+	 * @param energy The energy of the block
+	 */
+	protected void startBlock(OMP2DWorkspace ws, double energy) {
+		termination = null;
+		startTime = System.nanoTime();
+		ws.getEnergies()[0] = energy;
+		recordedAtoms = previousAtoms = 0;
+	}
+	
+	/**
+	 * Records the residual energy after one atom of an iteration, for solvers which 
+	 * add several atoms per iteration, so termination policies see every atom
+	 * @param ws
+	 * @param atoms The number of atoms selected so far
+	 * @param residualEnergy The energy of the residue
+	 */
+	protected void recordEnergy(OMP2DWorkspace ws, int atoms, double residualEnergy) {
+		ws.getEnergies()[atoms] = residualEnergy;
+		recordedAtoms = atoms;
+	}
+	
+	/**
+	 * Records the residual energy after an iteration and checks whether the block is 
+	 * finished, either as the tolerance has been reached or the termination policy fired
+	 * @param ws
+	 * @param atoms The number of atoms selected so far
+	 * @param residualEnergy The energy of the residue
+	 * @return True if no more atoms should be added
+	 */
+	protected boolean isFinished(OMP2DWorkspace ws, int atoms, double residualEnergy) {
+		double[] energies = ws.getEnergies();
+		//atoms this solver could not record singly are spread evenly over the iteration, 
+		//rather than leaving values from an earlier block in the workspace
+		double last = energies[recordedAtoms];
+		for(int k = recordedAtoms+1; k < atoms; k++) {
+			energies[k] = last + (residualEnergy - last)*(k - recordedAtoms)/(atoms - recordedAtoms);
+		}
+		energies[atoms] = residualEnergy;
+		recordedAtoms = atoms;
+		int previous = previousAtoms;
+		previousAtoms = atoms;
+		
+		double acceptance = residualEnergy / (WIDTH*WIDTH);
+		if(acceptance < TOLERANCE) {
+			termination = Termination.TOLERANCE;
+			return true;
+		}
+		if(terminationPolicy != null) {
+			termination = terminationPolicy.check(energies, previous, atoms, System.nanoTime() - startTime);
+		}
+		if(termination == null && atoms >= getMaxAtoms()) {
+			termination = Termination.MAX_ITERATIONS;
+		}
+		return termination != null;
+	}
+	
+	/**
+	 * Moves a selection down to the next free index when earlier selections were discarded
+	 * @param ws
+	 * @param from The index the atom was selected at
+	 * @param to The next free index
+	 */
+	protected static void moveSelection(OMP2DWorkspace ws, int from, int to) {
+		ws.rowAtoms[to] = ws.rowAtoms[from];
+		ws.colAtoms[to] = ws.colAtoms[from];
+	}
+	
+	/**
+	 * Finds the workspace this block should be processed in
+	 * @return The workspace
+	 * @throws BadDimensionsException
+	 */
+	protected OMP2DWorkspace getWorkspace() throws BadDimensionsException {
+		int capacity = getMaxAtoms();
+		if(workspace == null) {
+			return OMP2DWorkspace.forCurrentThread(WIDTH, capacity);
+		}
+		if(!workspace.fits(WIDTH, capacity)) {
+			throw new BadDimensionsException("Workspace cannot hold a block of width " + WIDTH + 
+					" for " + capacity + " iterations");
+		}
+		return workspace;
+	}
+	
+	/**
+	 * Records that the block could not be improved upon
+	 */
+	protected void noImprovement() {
+		termination = Termination.NO_IMPROVEMENT;
+		approxData = imageData.clone();
+		approxBlock = null;
+		coefficients = new double[0];
+	}
+	
+	@Override
+	public Termination getTermination() {
+		return termination;
+	}
+	
+	@Override
+	public Matrix getApproxImage() {
+		double[] approxData = getApproxData();
+		if(approxBlock == null && approxData != null) {
+			approxBlock = new Matrix(WIDTH, approxData);
+		}
+		return approxBlock;
+	}
+	
+	@Override
+	public double[] getApproxData() {
+		return approxData;
+	}
+	
+	@Override
+	public double[] getCoefficients() {
+		return coefficients;
+	}
+	
+	@Override
+	public double getNumCoefficients() {
+		return coefficients.length;
+	}
+	
+	@Override
+	public int getBlockId() {
+		return BLOCK_ID;
+	}
+	
+	@Override
+	public double getPSNR() {
+		double[] approxData = getApproxData();
+		double sum = 0;
+		for(int i = 0; i < WIDTH*WIDTH; i++) {
+			double diff = imageData[i] - approxData[i];
+			sum += diff * diff;
+		}
+		double mse = sum / (WIDTH*WIDTH);
+		return 10*Math.log10((255*255)/mse);
+	}
+}
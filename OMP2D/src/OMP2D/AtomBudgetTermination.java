@@ -0,0 +1,50 @@
+/*
+Copyright (c) 2014 Matthew Simons
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package OMP2D;
+
+/**
+ * Stops once a block has been given a fixed number of atoms
+ */
+public class AtomBudgetTermination implements TerminationPolicy {
+	private final int budget;
+	
+	/**
+	 * @param budget The largest number of atoms a block may use
+	 */
+	public AtomBudgetTermination(int budget) {
+		if(budget < 1) {
+			throw new IllegalArgumentException("The budget must allow at least one atom");
+		}
+		this.budget = budget;
+	}
+
+	@Override
+	public Termination check(double[] energies, int previousAtoms, int atoms, long elapsed) {
+		return atoms >= budget ? Termination.ATOM_BUDGET : null;
+	}
+
+	@Override
+	public int atomLimit() {
+		return budget;
+	}
+}
@@ -0,0 +1,49 @@
+/*
+Copyright (c) 2014 Matthew Simons
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package OMP2D;
+
+/**
+ * Chooses which atoms are added to the approximation on each iteration.
+ * 
+ * Before a selector is called the solver has found the largest absolute correlation
+ * and recorded its atoms at index k of the workspace's selections. A selector may 
+ * replace that selection and record further atoms after it.
+ */
+public interface AtomSelector {
+	
+	/**
+	 * Selects the atoms to add on this iteration from the workspace's correlations
+	 * @param ws The workspace holding the correlations
+	 * @param k The number of atoms selected so far, and the index of the first new selection
+	 * @param limit The maximum number of atoms which may be selected
+	 * @param maxAbs The largest absolute correlation
+	 * @return The number of atoms selected, at least 1
+	 */
+	public int select(OMP2DWorkspace ws, int k, int limit, double maxAbs);
+	
+	/**
+	 * @return Whether the selector reads the workspace's correlations, rather than 
+	 * only the largest which has already been recorded
+	 */
+	public boolean usesCorrelations();
+}
@@ -20,17 +20,33 @@ public class BasicMatrix
 					"Recieved (" + mMax + "," + nMax + ")x(" + pMax + "," + qMax + ")");
 		}
 
-		double[] result = new double[mMax*qMax];
-
-		for(int m = 0; m < mMax; m++) {		
-			for(int q = 0; q < qMax; q++) {
-				for(int product = 0; product < nMax; product++) {
-					result[m*qMax + q] += matrix1.get(product, m) * matrix2.get(q, product);
-				}
-			}
-		}
-		
-		return new BasicMatrix(qMax, result);
+		BasicMatrix result = new BasicMatrix(qMax, mMax);
+		Gemm.multiply(matrix1.view(), matrix2.view(), result.view());
+		return result;
+	}
+	
+	/**
+	 * Performs the dot product of two matrices, writing into an existing view
+	 * @param matrix1 A matrix defined as \f$M^{x \times y}\f$
+	 * @param matrix2 A matrix defined as \f$N^{y \times z}\f$
+	 * @param result A view of x by z elements to be overwritten with the product
+	 * @throws BadDimensionsException
+	 */
+	public static void multiply(BasicMatrix matrix1, BasicMatrix matrix2, MatrixView result) throws BadDimensionsException{
+		Gemm.multiply(matrix1.view(), matrix2.view(), result);
+	}
+	
+	/**
+	 * Performs the dot product of two row-major matrices, writing into an existing array 
+	 * @param matrix1 A matrix defined as \f$M^{m \times n}\f$
+	 * @param matrix2 A matrix defined as \f$N^{n \times q}\f$
+	 * @param result The array of length m*q to be overwritten with the product
+	 * @param mMax
+	 * @param nMax
+	 * @param qMax
+	 */
+	public static void multiply(double[] matrix1, double[] matrix2, double[] result, int mMax, int nMax, int qMax) {
+		Gemm.multiply(matrix1, matrix2, result, mMax, nMax, qMax);
 	}
 	
 	/**
@@ -43,12 +59,28 @@ public class BasicMatrix
 	 * @throws BadDimensionsException 
 	 */
 	public static double[] kronecker(BasicMatrix vector1, BasicMatrix vector2, int curColAtom, int curRowAtom) throws BadDimensionsException {
+		double[] result = new double[vector1.getWidth()*vector1.getWidth()];
+		kronecker(vector1, vector2, curColAtom, curRowAtom, result);
+		return result;
+	}
+	
+	/**
+	 * Applies the Kronecker product of a row of each matrix, writing into an existing array
+	 * @param vector1
+	 * @param vector2
+	 * @param curColAtom The row of vector1
+	 * @param curRowAtom The row of vector2
+	 * @param result The array of at least size*size elements to be overwritten with the product
+	 * @throws BadDimensionsException 
+	 */
+	public static void kronecker(BasicMatrix vector1, BasicMatrix vector2, int curColAtom, int curRowAtom, double[] result) throws BadDimensionsException {
 		if(vector1.getWidth() != vector2.getWidth()) {
 			throw new BadDimensionsException(); 
 		}
 		int size = vector1.getWidth();
-		
-		double[] result = new double[size*size];
+		if(result.length < size*size) {
+			throw new BadDimensionsException("Result is too small for the product", size*size, result.length);
+		}
 
 		for(int j = 0; j < size; j++) {
 			double scaleFactor = vector1.get(j, curColAtom);
@@ -56,7 +88,6 @@ public class BasicMatrix
 				result[j*size + i] = scaleFactor*vector2.get(i, curRowAtom); 
 			}
 		}
-		return result;
 	}
 	
 	protected double[] matrix;
@@ -90,10 +121,10 @@ public class BasicMatrix
 	}
 	
 	public void add(BasicMatrix m) {
-		for(int j = 0; j < m.getHeight(); j++) {
-			for(int i = 0; i < m.getWidth(); i++) {
-				matrix[j*width + i] += m.get(i, j);
-			}
+		try {
+			view().subBlock(0, 0, m.getWidth(), m.getHeight()).add(m.view());
+		} catch (BadDimensionsException e) {
+			throw new IllegalArgumentException(e);
 		}
 	}
 	
@@ -108,7 +139,7 @@ public class BasicMatrix
 	}
 	
 	public double get(int x, int y) {
-		return matrix[y*width + x];
+		return transposed ? matrix[x*height + y] : matrix[y*width + x];
 	}
 	
 	public double getFrobeniusNorm() {
@@ -173,14 +204,18 @@ public class BasicMatrix
 	}
 	
 	public void set(int x, int y, double value) {
-		matrix[width*y + x] = value;
+		if(transposed) {
+			matrix[height*x + y] = value;
+		} else {
+			matrix[width*y + x] = value;
+		}
 	}
 	
 	public void subtract(BasicMatrix m) {
-		for(int j = 0; j < m.getHeight(); j++) {
-			for(int i = 0; i < m.getWidth(); i++) {
-				matrix[j*width + i] -= m.get(i, j);
-			}
+		try {
+			view().subBlock(0, 0, m.getWidth(), m.getHeight()).subtract(m.view());
+		} catch (BadDimensionsException e) {
+			throw new IllegalArgumentException(e);
 		}
 	}
 	
@@ -188,6 +223,26 @@ public class BasicMatrix
 		return matrix;
 	}
 	
+	/**
+	 * Transposes this matrix in place by swapping how its storage is read
+	 */
+	public void transpose() {
+		transposed = !transposed;
+		int temp = width;
+		width = height;
+		height = temp;
+	}
+	
+	/**
+	 * @return A view of this matrix as seen through {@link #get(int, int)}, over the same storage
+	 */
+	public MatrixView view() {
+		if(!transposed) {
+			return new MatrixView(matrix, 0, width, height, width, 1);
+		}
+		return new MatrixView(matrix, 0, width, height, 1, height);
+	}
+	
 	/**
 	 * Finds the largest absolute value of a given vector
 	 * @return the largest absolute value
@@ -0,0 +1,159 @@
+/*
+Copyright (c) 2014 Matthew Simons
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package OMP2D;
+
+import java.util.Arrays;
+
+/**
+ * A Batch-OMP block processor, suited to approximating many blocks of the same size.
+ * 
+ * The correlations of the block with every atom, \f$\alpha^0 = D^T f\f$, are calculated 
+ * once. After that the selection and coefficient updates take place entirely in terms of 
+ * the Gram tables of {@link SeparableDictionary}: the correlations of the residue are 
+ * \f$\alpha^0 - G_I x_I\f$ and its energy is \f$\|f\|^2 - x_I^T \alpha^0_I\f$, so the N x N 
+ * residue is only formed to produce the approximated block, or once the selected atoms 
+ * span so many row atoms that the dense correlations are cheaper than the update.
+ */
+public class BatchOMP2D extends CholeskyOMP2D {
+	
+	/**
+	 * Creates a new Batch-OMP block processor
+	 * @param imageData The intensity values of the image
+	 * @param width The width of the image
+	 * @param tol The tolerance level to be achieved
+	 * @param maxIterations The maximum number of iterations to be done without meeting the tolerance level
+	 */
+	public BatchOMP2D(double[] imageData, int width, int id, double tol, int maxIterations) {
+		super(imageData, width, id, tol, maxIterations);
+	}
+	
+	/**
+	 * Calculates the approximated block 
+	 * @throws BadDimensionsException
+	 */
+	@Override
+	public void calcBlock() throws BadDimensionsException {
+		OMP2DWorkspace ws = getWorkspace();
+		ws.reset(imageData);
+		
+		final int atoms = ws.atoms;
+		double[] initial = ws.getInitialCorrelations();
+		engine.correlate(ws, 0);
+		System.arraycopy(ws.innerProducts, 0, initial, 0, initial.length);
+		double energy = Matrix.getFrobeniusNorm(ws.image);
+		startBlock(ws, energy);
+		
+		final int maxAtoms = getMaxAtoms();
+		int selected = 0;
+		while(selected < maxAtoms) {
+			if(selected > 0) {
+				updateCorrelations(ws, selected);
+			}
+			int found = selectAtoms(ws, selected);
+			
+			if(found == 0) {
+				//no improvements to be made
+				noImprovement();
+				return;
+			}
+			
+			int added = 0;
+			for(int s = 0; s < found; s++) {
+				int k = selected+added;
+				moveSelection(ws, selected+s, k);
+				double projection = initial[ws.rowAtoms[k]*atoms + ws.colAtoms[k]];
+				if(addAtom(ws, k, projection)) {
+					added++;
+				}
+			}
+			if(added == 0) {
+				//the atoms are already spanned by those selected
+				termination = Termination.DEPENDENT_ATOMS;
+				break;
+			}
+			selected += added;
+			
+			solve(ws, selected);
+			double residualEnergy = energy - Matrix.innerProduct(ws.coefficients, 0, ws.projections, 0, selected);
+			
+			if(isFinished(ws, selected, residualEnergy)) {
+				break;
+			}
+		}
+		updateResidual(ws, selected);
+		processResults(ws, selected);
+	}
+	
+	/**
+	 * Calculates the correlations of the residue from those of the block, as 
+	 * \f$\alpha^0 - G_y[:, R] W\f$ where row s of W combines the rows of \f$G_x\f$ for 
+	 * the selected atoms sharing row atom \f$R_s\f$. This is one product over the u distinct 
+	 * row atoms rather than a sweep of the correlations per atom. Once the product costs 
+	 * more than the dense products, past the same {@link GramCorrelation#crossover(int)} 
+	 * of about 6N/5 row atoms, the residue is formed and the correlations calculated densely.
+	 * @param ws
+	 * @param selected The number of atoms selected
+	 * @throws BadDimensionsException
+	 */
+	private void updateCorrelations(OMP2DWorkspace ws, int selected) throws BadDimensionsException {
+		final int atoms = ws.atoms;
+		int[] slots = ws.getRowSlots();
+		Arrays.fill(slots, 0, atoms, -1);
+		int used = 0;
+		for(int j = 0; j < selected; j++) {
+			int rowAtom = ws.rowAtoms[j];
+			if(slots[rowAtom] < 0) {
+				slots[rowAtom] = used;
+				slots[atoms + used++] = rowAtom;
+			}
+		}
+		if(used > GramCorrelation.crossover(WIDTH)) {
+			updateResidual(ws, selected);
+			DenseCorrelation.INSTANCE.correlate(ws, selected);
+			return;
+		}
+		
+		double[] gramX = ws.dictionary.gramX;
+		double[] gramY = ws.dictionary.gramY;
+		double[] combinations = ws.getRowCombinations();
+		double[] gathered = ws.getGatheredGram();
+		Kernels kernels = Kernels.get();
+		Arrays.fill(combinations, 0, used*atoms, 0);
+		for(int j = 0; j < selected; j++) {
+			kernels.axpy(ws.coefficients[j], gramX, ws.colAtoms[j]*atoms, combinations, slots[ws.rowAtoms[j]]*atoms, atoms);
+		}
+		//G_y is symmetric, so its columns are read from its rows
+		for(int i = 0; i < atoms; i++) {
+			for(int s = 0; s < used; s++) {
+				gathered[i*used + s] = gramY[slots[atoms + s]*atoms + i];
+			}
+		}
+		
+		double[] initial = ws.getInitialCorrelations();
+		double[] correlations = ws.innerProducts;
+		Gemm.multiply(atoms, used, atoms, gathered, 0, used, combinations, 0, atoms, correlations, 0, atoms);
+		for(int i = 0; i < correlations.length; i++) {
+			correlations[i] = initial[i] - correlations[i];
+		}
+	}
+}
@@ -0,0 +1,197 @@
+/*
+Copyright (c) 2014 Matthew Simons
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package OMP2D;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Advances a batch of {@link OMP2D} blocks of the same width in lockstep. On each 
+ * iteration the residues of the running blocks are placed side by side, so that the 
+ * correlations of all of them come from two large products with the dictionary rather 
+ * than two narrow products per block. A block leaves the batch as soon as it finishes,
+ * and the next block waiting takes over its workspace.
+ * 
+ * The correlations are always calculated densely, summed in the same order as 
+ * {@link DenseCorrelation}, so each block selects the same atoms as it would alone.
+ */
+public class BlockBatch {
+	/**
+	 * The default number of blocks running at once
+	 */
+	public static final int DEFAULT_SIZE = 8;
+	
+	private final List<OMP2D> blocks;
+	private final int width, atoms, size;
+	
+	private final OMP2DWorkspace[] workspaces;
+	private final OMP2D[] running;
+	private final double[] stacked, temp, vertical, correlations;
+	
+	/**
+	 * @param blocks The blocks to process
+	 * @param size The number of blocks to run at once
+	 * @throws BadDimensionsException If the blocks are not all the same width
+	 */
+	public BlockBatch(List<OMP2D> blocks, int size) throws BadDimensionsException {
+		this.blocks = new ArrayList<OMP2D>(blocks);
+		this.width = blocks.isEmpty() ? 0 : blocks.get(0).WIDTH;
+		this.atoms = 5*width;
+		this.size = Math.max(1, Math.min(size, blocks.size()));
+		
+		int capacity = 1;
+		for(OMP2D block : blocks) {
+			if(block.WIDTH != width) {
+				throw new BadDimensionsException("Blocks of width " + block.WIDTH + " and " + width + 
+						" cannot be batched together");
+			}
+			capacity = Math.max(capacity, block.getMaxAtoms());
+		}
+		
+		workspaces = new OMP2DWorkspace[this.size];
+		for(int s = 0; s < workspaces.length && width > 0; s++) {
+			workspaces[s] = new OMP2DWorkspace(width, capacity);
+		}
+		running = new OMP2D[this.size];
+		stacked = new double[width*this.size*width];
+		temp = new double[atoms*this.size*width];
+		vertical = new double[this.size*atoms*width];
+		correlations = new double[this.size*atoms*atoms];
+	}
+	
+	/**
+	 * @param blocks The blocks to process, {@link #DEFAULT_SIZE} at a time
+	 * @throws BadDimensionsException If the blocks are not all the same width
+	 */
+	public BlockBatch(List<OMP2D> blocks) throws BadDimensionsException {
+		this(blocks, DEFAULT_SIZE);
+	}
+	
+	/**
+	 * @param block
+	 * @return Whether the block can be processed in a batch, giving the same result
+	 */
+	public static boolean accepts(BlockSolver block) {
+		return block instanceof OMP2D && ((OMP2D) block).engine instanceof DenseCorrelation;
+	}
+	
+	/**
+	 * @return The blocks of the batch, in the order they were given
+	 */
+	public List<OMP2D> getBlocks() {
+		return blocks;
+	}
+	
+	/**
+	 * Calculates the approximation of every block in the batch
+	 * @throws BadDimensionsException
+	 */
+	public void calcBlocks() throws BadDimensionsException {
+		int next = 0;
+		int count = 0;
+		for(; count < size && next < blocks.size(); count++) {
+			running[count] = blocks.get(next++);
+			running[count].start(workspaces[count]);
+		}
+		
+		while(count > 0) {
+			correlate(count);
+			
+			int s = 0;
+			while(s < count) {
+				OMP2D block = running[s];
+				OMP2DWorkspace ws = workspaces[s];
+				if(block.advance(ws, select(block, ws, s))) {
+					s++;
+					continue;
+				}
+				
+				if(next < blocks.size()) {
+					running[s] = blocks.get(next++);
+					running[s].start(ws);
+					//its correlations are calculated on the next iteration
+					s++;
+					continue;
+				}
+				
+				//move the last running block into the finished block's place
+				count--;
+				running[s] = running[count];
+				workspaces[s] = workspaces[count];
+				workspaces[count] = ws;
+				running[count] = null;
+				if(s < count) {
+					System.arraycopy(correlations, count*atoms*atoms, correlations, s*atoms*atoms, atoms*atoms);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Finds the largest correlation of a block, or lets its selector look at all of them
+	 * @param block
+	 * @param ws
+	 * @param slot The position of the block's correlations
+	 * @return The number of atoms selected
+	 */
+	private int select(OMP2D block, OMP2DWorkspace ws, int slot) {
+		int k = block.getRows();
+		int offset = slot*atoms*atoms;
+		if(block.selector.usesCorrelations()) {
+			System.arraycopy(correlations, offset, ws.innerProducts, 0, atoms*atoms);
+			return block.selectAtoms(ws, k);
+		}
+		
+		int position = Kernels.get().indexOfMaxAbs(correlations, offset, atoms*atoms);
+		ws.rowAtoms[k] = position / atoms;
+		ws.colAtoms[k] = position % atoms;
+		return block.selectAtoms(ws, k, Math.abs(correlations[offset + position]));
+	}
+	
+	/**
+	 * Calculates the correlations of the first <code>count</code> running blocks, 
+	 * block s's starting at s*atoms*atoms
+	 * @param count
+	 */
+	private void correlate(int count) {
+		final int stride = count*width;
+		SeparableDictionary dictionary = workspaces[0].dictionary;
+		
+		//the residues side by side, multiplied by dictY in one product
+		for(int s = 0; s < count; s++) {
+			double[] residue = workspaces[s].residue;
+			for(int i = 0; i < width; i++) {
+				System.arraycopy(residue, i*width, stacked, i*stride + s*width, width);
+			}
+		}
+		Gemm.multiply(atoms, width, stride, dictionary.dictY, 0, width, stacked, 0, stride, temp, 0, stride);
+		
+		//each block's product stacked beneath the last, multiplied by dictX in one product
+		for(int s = 0; s < count; s++) {
+			for(int m = 0; m < atoms; m++) {
+				System.arraycopy(temp, m*stride + s*width, vertical, (s*atoms + m)*width, width);
+			}
+		}
+		Gemm.multiply(count*atoms, width, atoms, vertical, 0, width, dictionary.dictX, 0, atoms, correlations, 0, atoms);
+	}
+}
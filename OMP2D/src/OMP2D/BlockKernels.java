@@ -0,0 +1,108 @@
+/*
+Copyright (c) 2014 Matthew Simons
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package OMP2D;
+
+/**
+ * The loops of a solver step whose trip counts are fixed by the block width: the product
+ * of the row dictionary with the residue, the search of the correlations for their 
+ * largest magnitude, and the Kronecker product of two atoms.
+ * 
+ * {@link #forWidth(int)} returns kernels written for 8, 16 and 32 pixel blocks, the sizes
+ * the plugin offers, whose loops run to constants the JIT can unroll, and a generic 
+ * implementation for any other width. Every implementation sums in the same order, so
+ * all of them find the same atoms.
+ */
+public abstract class BlockKernels {
+	
+	/**
+	 * @param width The width and height of the blocks
+	 * @return The kernels for blocks of the given width
+	 */
+	public static BlockKernels forWidth(int width) {
+		switch(width) {
+		case BlockKernels8.WIDTH:
+			return BlockKernels8.INSTANCE;
+		case BlockKernels16.WIDTH:
+			return BlockKernels16.INSTANCE;
+		case BlockKernels32.WIDTH:
+			return BlockKernels32.INSTANCE;
+		default:
+			return new GenericBlockKernels(width);
+		}
+	}
+	
+	/**
+	 * @param width The width and height of the blocks
+	 * @return The generic kernels, which read the width from a field, whatever the width
+	 */
+	public static BlockKernels generic(int width) {
+		return new GenericBlockKernels(width);
+	}
+	
+	/**
+	 * @return The block width these kernels were written for
+	 */
+	public abstract int getWidth();
+	
+	/**
+	 * Calculates temp = dictY*residue
+	 * @param ws
+	 */
+	void multiplyDictY(OMP2DWorkspace ws) {
+		Gemm.multiply(ws.dictionary.dictY, ws.residue, ws.temp, ws.atoms, ws.width, ws.width);
+	}
+	
+	/**
+	 * Streams the product of temp and dictX, comparing each correlation in the same order 
+	 * as {@link OMP2DWorkspace#findMaxAbs(int)}, and records the atoms of the largest
+	 * @param ws
+	 * @param k The number of atoms selected so far
+	 * @return The largest absolute correlation
+	 */
+	double searchMaxAbs(OMP2DWorkspace ws, int k) {
+		return searchMaxAbs(ws, 0, ws.atoms, ws.rowAtoms, ws.colAtoms, k);
+	}
+	
+	/**
+	 * Searches the rows of the correlations from <code>from</code> up to <code>to</code>. 
+	 * Ties go to the first correlation in row major order, so the searches of consecutive 
+	 * ranges can be combined by keeping the earlier range's result unless a later one is larger.
+	 * @param ws
+	 * @param from The first row atom to search
+	 * @param to The row atom to stop before
+	 * @param rowAtoms The array to record the row atom of the largest correlation in
+	 * @param colAtoms The array to record the column atom of the largest correlation in
+	 * @param index The index to record the atoms at
+	 * @return The largest absolute correlation in the range, or 0 if every one is 0
+	 */
+	abstract double searchMaxAbs(OMP2DWorkspace ws, int from, int to, int[] rowAtoms, int[] colAtoms, int index);
+	
+	/**
+	 * Writes the Kronecker product of two atoms of the row dictionary
+	 * @param dict The row dictionary, one atom per row
+	 * @param colAtom
+	 * @param rowAtom
+	 * @param atom The array of width*width elements to write to
+	 */
+	abstract void kronecker(double[] dict, int colAtom, int rowAtom, double[] atom);
+}
@@ -0,0 +1,82 @@
+/*
+Copyright (c) 2014 Matthew Simons
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package OMP2D;
+
+/**
+ * Block kernels for 32x32 blocks, searching the correlations four columns at a time
+ */
+class BlockKernels32 extends BlockKernels {
+	static final int WIDTH = 32;
+	static final int ATOMS = 5*WIDTH;
+	static final BlockKernels32 INSTANCE = new BlockKernels32();
+	
+	@Override
+	public int getWidth() {
+		return WIDTH;
+	}
+	
+	@Override
+	double searchMaxAbs(OMP2DWorkspace ws, int from, int to, int[] rowAtoms, int[] colAtoms, int index) {
+		double[] dictXT = ws.dictionary.dictXTransposed;
+		double[] temp = ws.temp;
+		
+		double maxAbs = 0;
+		int maxAbsRow = from, maxAbsCol = 0;
+		for(int m = from; m < to; m++) {
+			int row = m*WIDTH;
+			for(int q = 0; q < ATOMS; q += 4) {
+				int col0 = q*WIDTH, col1 = col0+WIDTH, col2 = col1+WIDTH, col3 = col2+WIDTH;
+				double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+				for(int p = 0; p < WIDTH; p++) {
+					double t = temp[row+p];
+					sum0 += t*dictXT[col0+p];
+					sum1 += t*dictXT[col1+p];
+					sum2 += t*dictXT[col2+p];
+					sum3 += t*dictXT[col3+p];
+				}
+				sum0 = Math.abs(sum0);
+				sum1 = Math.abs(sum1);
+				sum2 = Math.abs(sum2);
+				sum3 = Math.abs(sum3);
+				if(sum0 > maxAbs) { maxAbs = sum0; maxAbsRow = m; maxAbsCol = q; }
+				if(sum1 > maxAbs) { maxAbs = sum1; maxAbsRow = m; maxAbsCol = q+1; }
+				if(sum2 > maxAbs) { maxAbs = sum2; maxAbsRow = m; maxAbsCol = q+2; }
+				if(sum3 > maxAbs) { maxAbs = sum3; maxAbsRow = m; maxAbsCol = q+3; }
+			}
+		}
+		rowAtoms[index] = maxAbsRow;
+		colAtoms[index] = maxAbsCol;
+		return maxAbs;
+	}
+	
+	@Override
+	void kronecker(double[] dict, int colAtom, int rowAtom, double[] atom) {
+		int col = colAtom*WIDTH, row = rowAtom*WIDTH;
+		for(int j = 0; j < WIDTH; j++) {
+			double scaleFactor = dict[col+j];
+			for(int i = 0; i < WIDTH; i++) {
+				atom[j*WIDTH+i] = scaleFactor*dict[row+i];
+			}
+		}
+	}
+}
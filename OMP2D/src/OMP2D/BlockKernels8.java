@@ -0,0 +1,104 @@
+/*
+Copyright (c) 2014 Matthew Simons
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package OMP2D;
+
+/**
+ * Block kernels for 8x8 blocks. Each row of temp or the residue fits in eight locals,
+ * so the products are written out in full.
+ */
+class BlockKernels8 extends BlockKernels {
+	static final int WIDTH = 8;
+	static final int ATOMS = 5*WIDTH;
+	static final BlockKernels8 INSTANCE = new BlockKernels8();
+	
+	@Override
+	public int getWidth() {
+		return WIDTH;
+	}
+	
+	@Override
+	void multiplyDictY(OMP2DWorkspace ws) {
+		double[] dictY = ws.dictionary.dictY;
+		double[] residue = ws.residue;
+		double[] temp = ws.temp;
+		for(int m = 0; m < ATOMS; m++) {
+			int row = m*WIDTH;
+			double y0 = dictY[row], y1 = dictY[row+1], y2 = dictY[row+2], y3 = dictY[row+3];
+			double y4 = dictY[row+4], y5 = dictY[row+5], y6 = dictY[row+6], y7 = dictY[row+7];
+			for(int q = 0; q < WIDTH; q++) {
+				double sum = 0;
+				sum += y0*residue[q];
+				sum += y1*residue[WIDTH+q];
+				sum += y2*residue[2*WIDTH+q];
+				sum += y3*residue[3*WIDTH+q];
+				sum += y4*residue[4*WIDTH+q];
+				sum += y5*residue[5*WIDTH+q];
+				sum += y6*residue[6*WIDTH+q];
+				sum += y7*residue[7*WIDTH+q];
+				temp[row+q] = sum;
+			}
+		}
+	}
+	
+	@Override
+	double searchMaxAbs(OMP2DWorkspace ws, int from, int to, int[] rowAtoms, int[] colAtoms, int index) {
+		double[] dictXT = ws.dictionary.dictXTransposed;
+		double[] temp = ws.temp;
+		
+		double maxAbs = 0;
+		int maxAbsRow = from, maxAbsCol = 0;
+		for(int m = from; m < to; m++) {
+			int row = m*WIDTH;
+			double t0 = temp[row], t1 = temp[row+1], t2 = temp[row+2], t3 = temp[row+3];
+			double t4 = temp[row+4], t5 = temp[row+5], t6 = temp[row+6], t7 = temp[row+7];
+			for(int q = 0; q < ATOMS; q++) {
+				int col = q*WIDTH;
+				double sum = 0;
+				sum += t0*dictXT[col];
+				sum += t1*dictXT[col+1];
+				sum += t2*dictXT[col+2];
+				sum += t3*dictXT[col+3];
+				sum += t4*dictXT[col+4];
+				sum += t5*dictXT[col+5];
+				sum += t6*dictXT[col+6];
+				sum += t7*dictXT[col+7];
+				double abs = Math.abs(sum);
+				if(abs > maxAbs) { maxAbs = abs; maxAbsRow = m; maxAbsCol = q; }
+			}
+		}
+		rowAtoms[index] = maxAbsRow;
+		colAtoms[index] = maxAbsCol;
+		return maxAbs;
+	}
+	
+	@Override
+	void kronecker(double[] dict, int colAtom, int rowAtom, double[] atom) {
+		int col = colAtom*WIDTH, row = rowAtom*WIDTH;
+		for(int j = 0; j < WIDTH; j++) {
+			double scaleFactor = dict[col+j];
+			for(int i = 0; i < WIDTH; i++) {
+				atom[j*WIDTH+i] = scaleFactor*dict[row+i];
+			}
+		}
+	}
+}
@@ -0,0 +1,306 @@
+/*
+Copyright (c) 2014 Matthew Simons
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package OMP2D;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits the row operations of a single block across a fork-join pool. Work is only
+ * split once it touches at least <code>threshold</code> elements, as smaller loops 
+ * finish before the tasks could be stolen.
+ * 
+ * Every element is calculated by one task in the same order as the sequential loops, 
+ * so the results do not depend on the number of threads.
+ */
+public class BlockParallelism {
+	/**
+	 * The number of elements touched by a loop before it is split, which 32x32 blocks
+	 * reach after 64 atoms
+	 */
+	public static final int DEFAULT_THRESHOLD = 1 << 16;
+	
+	private static final int GRAIN = 1 << 14;
+	//a multiple of every vector length, so that each chunk is handled as it would be in one pass
+	private static final int CHUNK = 256;
+	
+	private final ForkJoinPool pool;
+	private final int threshold;
+	
+	/**
+	 * @param pool The pool to run the tasks in
+	 * @param threshold The number of elements a loop must touch before it is split
+	 */
+	public BlockParallelism(ForkJoinPool pool, int threshold) {
+		this.pool = pool;
+		this.threshold = threshold;
+	}
+	
+	/**
+	 * @return A mode which splits loops over the common pool once they reach {@link #DEFAULT_THRESHOLD}
+	 */
+	public static BlockParallelism common() {
+		return new BlockParallelism(ForkJoinPool.commonPool(), DEFAULT_THRESHOLD);
+	}
+	
+	public ForkJoinPool getPool() {
+		return pool;
+	}
+	
+	public int getThreshold() {
+		return threshold;
+	}
+	
+	/**
+	 * @param elements The number of elements a loop touches
+	 * @return Whether the loop is worth splitting
+	 */
+	public boolean splits(long elements) {
+		return elements >= threshold && pool.getParallelism() > 1;
+	}
+	
+	/**
+	 * Calculates the inner product of each of the first <code>count</code> rows with a vector
+	 * @param rows The rows, stored one after another
+	 * @param count The number of rows
+	 * @param length The length of each row
+	 * @param vector
+	 * @param offset The index of the first element of the vector
+	 * @param result The array to write the inner product of row j to index j of
+	 */
+	void innerProducts(final double[] rows, int count, final int length, 
+			final double[] vector, final int offset, final double[] result) {
+		pool.invoke(new RangeTask(new Range() {
+			@Override
+			public void run(int from, int to) {
+				Kernels kernels = Kernels.get();
+				for(int j = from; j < to; j++) {
+					result[j] = kernels.dot(rows, j*length, vector, offset, length);
+				}
+			}
+		}, 0, count, Math.max(1, GRAIN / length)));
+	}
+	
+	/**
+	 * Subtracts <code>scalars[j]</code> times a vector from each of the first <code>count</code> rows
+	 * @param rows The rows, stored one after another
+	 * @param count The number of rows
+	 * @param length The length of each row
+	 * @param scalars
+	 * @param vector The vector to subtract, which must not overlap the rows
+	 * @param offset The index of the first element of the vector
+	 */
+	void subtractFromRows(final double[] rows, int count, final int length, final double[] scalars, 
+			final double[] vector, final int offset) {
+		pool.invoke(new RangeTask(new Range() {
+			@Override
+			public void run(int from, int to) {
+				Kernels kernels = Kernels.get();
+				for(int j = from; j < to; j++) {
+					kernels.axpy(-scalars[j], vector, offset, rows, j*length, length);
+				}
+			}
+		}, 0, count, Math.max(1, GRAIN / length)));
+	}
+	
+	/**
+	 * Subtracts <code>scalars[j]</code> times each of the first <code>count</code> rows from 
+	 * a vector, in order of j. The vector is split into chunks rather than the rows.
+	 * @param rows The rows, stored one after another
+	 * @param count The number of rows
+	 * @param length The length of each row
+	 * @param scalars
+	 * @param vector The vector to subtract from, which must not overlap the rows
+	 * @param offset The index of the first element of the vector
+	 */
+	void subtractCombination(final double[] rows, final int count, final int length, final double[] scalars, 
+			final double[] vector, final int offset) {
+		int chunks = (length + CHUNK - 1) / CHUNK;
+		pool.invoke(new RangeTask(new Range() {
+			@Override
+			public void run(int from, int to) {
+				Kernels kernels = Kernels.get();
+				int start = from*CHUNK;
+				int end = Math.min(length, to*CHUNK);
+				for(int j = 0; j < count; j++) {
+					kernels.axpy(-scalars[j], rows, j*length + start, vector, offset + start, end - start);
+				}
+			}
+		}, 0, chunks, Math.max(1, GRAIN / (count*CHUNK))));
+	}
+	
+	/**
+	 * @param ws
+	 * @return Whether the correlations of the workspace's blocks are worth splitting, and
+	 * the pool has workers to spare for them
+	 */
+	boolean splitsSearch(OMP2DWorkspace ws) {
+		return splits((long) ws.atoms*ws.atoms*ws.width) && pool.getActiveThreadCount() < pool.getParallelism();
+	}
+	
+	/**
+	 * Calculates the correlations as {@link DenseCorrelation#correlate(OMP2DWorkspace, int)} 
+	 * does, each task working on a range of row atoms
+	 * @param ws
+	 */
+	void correlate(final OMP2DWorkspace ws) {
+		multiplyDictY(ws);
+		final int width = ws.width, atoms = ws.atoms;
+		pool.invoke(new RangeTask(new Range() {
+			@Override
+			public void run(int from, int to) {
+				Gemm.multiply(to - from, width, atoms, ws.temp, from*width, width, 
+						ws.dictionary.dictX, 0, atoms, ws.innerProducts, from*atoms, atoms);
+			}
+		}, 0, atoms, Math.max(1, GRAIN / (atoms*width))));
+	}
+	
+	/**
+	 * Finds the largest correlation as {@link DenseCorrelation#correlateMaxAbs(OMP2DWorkspace, int)}
+	 * does. Each task searches its own ranges of row atoms, and the ranges are then compared 
+	 * in order, so the first of equal correlations is chosen as in the sequential search.
+	 * @param ws
+	 * @param k The number of atoms selected so far
+	 * @return The largest absolute correlation
+	 */
+	double correlateMaxAbs(final OMP2DWorkspace ws, int k) {
+		multiplyDictY(ws);
+		final int atoms = ws.atoms;
+		final int rows = Math.max(1, GRAIN / (atoms*ws.width));
+		int ranges = (atoms + rows - 1) / rows;
+		final double[] maxAbs = ws.getSearchMaxAbs(ranges);
+		final int[] rowAtoms = ws.getSearchRowAtoms(ranges), colAtoms = ws.getSearchColAtoms(ranges);
+		pool.invoke(new RangeTask(new Range() {
+			@Override
+			public void run(int from, int to) {
+				for(int r = from; r < to; r++) {
+					maxAbs[r] = ws.blockKernels.searchMaxAbs(ws, r*rows, Math.min(atoms, (r+1)*rows), rowAtoms, colAtoms, r);
+				}
+			}
+		}, 0, ranges, 1));
+		
+		int best = 0;
+		for(int r = 1; r < ranges; r++) {
+			if(maxAbs[r] > maxAbs[best]) {
+				best = r;
+			}
+		}
+		ws.rowAtoms[k] = rowAtoms[best];
+		ws.colAtoms[k] = colAtoms[best];
+		return maxAbs[best];
+	}
+	
+	/**
+	 * Finds the largest of the workspace's correlations as {@link OMP2DWorkspace#findMaxAbs(int)}
+	 * does, searching chunks of them in parallel and then comparing the chunks in order
+	 * @param ws
+	 * @param k The number of atoms selected so far
+	 * @return The largest absolute correlation
+	 */
+	double findMaxAbs(OMP2DWorkspace ws, int k) {
+		final double[] innerProducts = ws.innerProducts;
+		final int length = innerProducts.length;
+		final int chunks = (length + GRAIN - 1) / GRAIN;
+		final int[] positions = ws.getSearchPositions(chunks);
+		pool.invoke(new RangeTask(new Range() {
+			@Override
+			public void run(int from, int to) {
+				Kernels kernels = Kernels.get();
+				for(int c = from; c < to; c++) {
+					int start = c*GRAIN;
+					positions[c] = start + kernels.indexOfMaxAbs(innerProducts, start, Math.min(GRAIN, length - start));
+				}
+			}
+		}, 0, chunks, 1));
+		
+		int position = positions[0];
+		for(int c = 1; c < chunks; c++) {
+			if(Math.abs(innerProducts[positions[c]]) > Math.abs(innerProducts[position])) {
+				position = positions[c];
+			}
+		}
+		ws.rowAtoms[k] = position / ws.atoms;
+		ws.colAtoms[k] = position % ws.atoms;
+		return Math.abs(innerProducts[position]);
+	}
+	
+	/**
+	 * Calculates temp = dictY*residue, each task working on a range of row atoms
+	 * @param ws
+	 */
+	private void multiplyDictY(final OMP2DWorkspace ws) {
+		final int width = ws.width;
+		pool.invoke(new RangeTask(new Range() {
+			@Override
+			public void run(int from, int to) {
+				Gemm.multiply(to - from, width, width, ws.dictionary.dictY, from*width, width, 
+						ws.residue, 0, width, ws.temp, from*width, width);
+			}
+		}, 0, ws.atoms, Math.max(1, GRAIN / (width*width))));
+	}
+	
+	/**
+	 * Runs a piece of work over a range of indices, halving the range across the pool
+	 * @param from The first index
+	 * @param to The index to stop before
+	 * @param grain The number of indices below which a range is not split
+	 * @param range The work
+	 */
+	void forEach(int from, int to, int grain, Range range) {
+		pool.invoke(new RangeTask(range, from, to, grain));
+	}
+	
+	/**
+	 * A piece of work over a range of indices
+	 */
+	interface Range {
+		void run(int from, int to);
+	}
+	
+	/**
+	 * Halves its range until no more than <code>grain</code> indices are left
+	 */
+	private static class RangeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		private final Range range;
+		private final int from, to, grain;
+		
+		RangeTask(Range range, int from, int to, int grain) {
+			this.range = range;
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
+		}
+		
+		@Override
+		protected void compute() {
+			if(to - from <= grain) {
+				range.run(from, to);
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new RangeTask(range, from, mid, grain), new RangeTask(range, mid, to, grain));
+		}
+	}
+}
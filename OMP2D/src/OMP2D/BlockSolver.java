@@ -0,0 +1,77 @@
+/*
+Copyright (c) 2014 Matthew Simons
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package OMP2D;
+
+/**
+ * Approximates a single block of an image from the separable dictionary
+ */
+public interface BlockSolver {
+	
+	/**
+	 * Calculates the approximated block 
+	 * @throws BadDimensionsException
+	 */
+	public void calcBlock() throws BadDimensionsException;
+	
+	/**
+	 * 
+	 * @return The approximated block calculated
+	 */
+	public Matrix getApproxImage();
+	
+	/**
+	 * 
+	 * @return The intensity values of the approximated block, row by row
+	 */
+	public double[] getApproxData();
+	
+	/**
+	 * Returns the coefficients used to approximate this block as a Vector
+	 * @return the coefficients
+	 */
+	public double[] getCoefficients();
+	
+	/**
+	 * 
+	 * @return The number of coefficients used to approximate this block
+	 */
+	public double getNumCoefficients();
+	
+	/**
+	 * Calculates and returns the PSNR of this block
+	 * @return PSNR
+	 */
+	public double getPSNR();
+	
+	/**
+	 * 
+	 * @return Why the last atom was the last, or null if the block has not been calculated
+	 */
+	public Termination getTermination();
+	
+	/**
+	 * 
+	 * @return The position of this block within the image
+	 */
+	public int getBlockId();
+}
@@ -0,0 +1,94 @@
+/*
+Copyright (c) 2014 Matthew Simons
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package OMP2D;
+
+import java.util.ArrayDeque;
+
+/**
+ * Recycles scratch arrays so that repeated operations do not allocate. Arrays are 
+ * handed out by size class, the next power of two at or above the requested length, 
+ * and a few arrays of each class are kept once released.
+ * 
+ * A pool is not thread safe; use {@link #forCurrentThread()} to obtain one that 
+ * is owned by the calling thread.
+ */
+public class BufferPool {
+	private static final ThreadLocal<BufferPool> LOCAL = new ThreadLocal<BufferPool>() {
+		@Override
+		protected BufferPool initialValue() {
+			return new BufferPool();
+		}
+	};
+	private static final int CLASSES = 31;
+	private static final int MAX_RETAINED = 4;
+	
+	private final ArrayDeque<double[]>[] free;
+	
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public BufferPool() {
+		free = new ArrayDeque[CLASSES];
+		for(int c = 0; c < CLASSES; c++) {
+			free[c] = new ArrayDeque<double[]>(MAX_RETAINED);
+		}
+	}
+	
+	/**
+	 * @return The pool owned by the calling thread
+	 */
+	public static BufferPool forCurrentThread() {
+		return LOCAL.get();
+	}
+	
+	/**
+	 * @param length
+	 * @return The size class of arrays able to hold the given number of elements
+	 */
+	static int sizeClass(int length) {
+		return length <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(length - 1);
+	}
+	
+	/**
+	 * Takes an array from the pool, allocating one if none of the right class is free.
+	 * The contents are left over from earlier use.
+	 * @param length The minimum length needed
+	 * @return An array whose length is the size class of the given length
+	 */
+	public double[] acquire(int length) {
+		int sizeClass = sizeClass(length);
+		double[] buffer = free[sizeClass].pollFirst();
+		return buffer != null ? buffer : new double[1 << sizeClass];
+	}
+	
+	/**
+	 * Returns an array to the pool. Arrays that were not acquired from a pool, 
+	 * or which would exceed the number kept for their class, are left to be collected.
+	 * @param buffer
+	 */
+	public void release(double[] buffer) {
+		int sizeClass = sizeClass(buffer.length);
+		if(buffer.length != 1 << sizeClass || free[sizeClass].size() >= MAX_RETAINED) {
+			return;
+		}
+		free[sizeClass].addFirst(buffer);
+	}
+}
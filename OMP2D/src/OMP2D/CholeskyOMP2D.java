@@ -0,0 +1,216 @@
+/*
+Copyright (c) 2014 Matthew Simons
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package OMP2D;
+
+/**
+ * An OMP2D block processor which keeps no orthogonal or biorthogonal atoms.
+ * 
+ * Instead the Cholesky factor \f$L L^T = G\f$ of the Gram matrix of the selected atoms is 
+ * grown by one row per iteration. As the atoms are separable, the entries of G are products 
+ * of the per-dimension Gram tables of {@link SeparableDictionary}, so adding an atom costs 
+ * \f$O(k^2)\f$ and the coefficients follow from forward and back substitution. Only the 
+ * k x k factor is held per block rather than two k x N^2 matrices.
+ */
+public class CholeskyOMP2D extends AbstractBlockSolver {
+	protected final double DEPENDENCE_TOL = 1e-12;
+	
+	/**
+	 * Creates a new Cholesky based OMP2D block processor
+	 * @param imageData The intensity values of the image
+	 * @param width The width of the image
+	 * @param tol The tolerance level to be achieved
+	 * @param maxIterations The maximum number of iterations to be done without meeting the tolerance level
+	 */
+	public CholeskyOMP2D(double[] imageData, int width, int id, double tol, int maxIterations) {
+		super(imageData, width, id, tol, maxIterations);
+	}
+	
+	/**
+	 * Sets the engine used to calculate the correlations between the atoms and the residue.
+	 * The engine must not rely on orthogonal atoms.
+	 * @param engine
+	 */
+	@Override
+	public void setCorrelationEngine(CorrelationEngine engine) {
+		if(engine.coordinateRows(WIDTH) > 0) {
+			throw new IllegalArgumentException("The Cholesky solver does not calculate orthogonal atoms");
+		}
+		super.setCorrelationEngine(engine);
+	}
+	
+	/**
+	 * Calculates the approximated block 
+	 * @throws BadDimensionsException
+	 */
+	@Override
+	public void calcBlock() throws BadDimensionsException {
+		OMP2DWorkspace ws = getWorkspace();
+		ws.reset(imageData);
+		
+		startBlock(ws, Matrix.getFrobeniusNorm(ws.residue));
+		
+		final int maxAtoms = getMaxAtoms();
+		int selected = 0;
+		while(selected < maxAtoms) {
+			int found = findAtoms(ws, selected);
+			
+			if(found == 0) {
+				//no improvements to be made
+				noImprovement();
+				return;
+			}
+			
+			int added = 0;
+			for(int s = 0; s < found; s++) {
+				int k = selected+added;
+				moveSelection(ws, selected+s, k);
+				double projection = blockCorrelation(ws, ws.rowAtoms[k], ws.colAtoms[k]);
+				if(addAtom(ws, k, projection)) {
+					added++;
+				}
+			}
+			if(added == 0) {
+				//the atoms are already spanned by those selected
+				termination = Termination.DEPENDENT_ATOMS;
+				break;
+			}
+			selected += added;
+			
+			solve(ws, selected);
+			updateResidual(ws, selected);
+			
+			if(isFinished(ws, selected, Matrix.getFrobeniusNorm(ws.residue))) {
+				break;
+			}
+		}
+		processResults(ws, selected);
+	}
+	
+	/**
+	 * Adds the k-th selected atom to the Cholesky factor and forward substitutes its 
+	 * correlation with the block
+	 * @param ws
+	 * @param k
+	 * @param projection The inner product of the block with the atom
+	 * @return False if the atom is linearly dependent on those already selected
+	 */
+	protected boolean addAtom(OMP2DWorkspace ws, int k, double projection) {
+		final int atoms = ws.atoms;
+		double[] gramX = ws.dictionary.gramX;
+		double[] gramY = ws.dictionary.gramY;
+		double[] cholesky = ws.getCholesky();
+		double[] forward = ws.alpha;
+		int rowAtom = ws.rowAtoms[k];
+		int colAtom = ws.colAtoms[k];
+		int rowK = k*(k+1)/2;
+		
+		for(int j = 0; j < k; j++) {
+			int rowJ = j*(j+1)/2;
+			double gram = gramY[rowAtom*atoms + ws.rowAtoms[j]] * gramX[colAtom*atoms + ws.colAtoms[j]];
+			cholesky[rowK+j] = (gram - Matrix.innerProduct(cholesky, rowK, cholesky, rowJ, j)) / cholesky[rowJ+j];
+		}
+		
+		double norm = gramY[rowAtom*atoms + rowAtom] * gramX[colAtom*atoms + colAtom];
+		double diagonal = norm - Matrix.innerProduct(cholesky, rowK, cholesky, rowK, k);
+		if(diagonal <= DEPENDENCE_TOL*norm) {
+			return false;
+		}
+		cholesky[rowK+k] = Math.sqrt(diagonal);
+		
+		ws.projections[k] = projection;
+		forward[k] = (projection - Matrix.innerProduct(cholesky, rowK, forward, 0, k)) / cholesky[rowK+k];
+		return true;
+	}
+	
+	/**
+	 * Calculates the inner product of the block with a Kronecker atom
+	 * @param ws
+	 * @param rowAtom
+	 * @param colAtom
+	 * @return
+	 */
+	protected double blockCorrelation(OMP2DWorkspace ws, int rowAtom, int colAtom) {
+		double[] dict = ws.dictionary.dictY;
+		double correlation = 0;
+		for(int j = 0; j < WIDTH; j++) {
+			double rowProduct = Matrix.innerProduct(ws.image, j*WIDTH, dict, rowAtom*WIDTH, WIDTH);
+			correlation += dict[colAtom*WIDTH + j]*rowProduct;
+		}
+		return correlation;
+	}
+	
+	/**
+	 * Back substitutes through the transposed Cholesky factor to find the coefficients
+	 * @param ws
+	 * @param selected The number of atoms selected
+	 */
+	protected void solve(OMP2DWorkspace ws, int selected) {
+		double[] cholesky = ws.getCholesky();
+		double[] forward = ws.alpha;
+		double[] x = ws.coefficients;
+		for(int i = selected-1; i >= 0; i--) {
+			double sum = forward[i];
+			for(int j = i+1; j < selected; j++) {
+				sum -= cholesky[j*(j+1)/2 + i]*x[j];
+			}
+			x[i] = sum / cholesky[i*(i+1)/2 + i];
+		}
+	}
+	
+	/**
+	 * Recalculates the residue from the coefficients of the selected atoms
+	 * @param ws
+	 * @param selected The number of atoms selected
+	 */
+	protected void updateResidual(OMP2DWorkspace ws, int selected) throws BadDimensionsException {
+		double[] dict = ws.dictionary.dictY;
+		double[] residue = ws.residue;
+		Kernels kernels = Kernels.get();
+		ws.resetResidue();
+		for(int k = 0; k < selected; k++) {
+			int rowAtom = ws.rowAtoms[k]*WIDTH;
+			int colAtom = ws.colAtoms[k]*WIDTH;
+			for(int j = 0; j < WIDTH; j++) {
+				double scalar = ws.coefficients[k]*dict[rowAtom + j];
+				if(scalar == 0) {
+					continue;
+				}
+				kernels.axpy(-scalar, dict, colAtom, residue, j*WIDTH, WIDTH);
+			}
+		}
+	}
+	
+	/**
+	 * Finds the approximated block and its coefficients
+	 * @param ws
+	 * @param selected The number of atoms selected
+	 */
+	protected void processResults(OMP2DWorkspace ws, int selected) throws BadDimensionsException {
+		coefficients = new double[selected];
+		System.arraycopy(ws.coefficients, 0, coefficients, 0, selected);
+
+		approxData = new double[ws.size];
+		approxBlock = null;
+		ws.getApproximation(approxData);
+	}
+}
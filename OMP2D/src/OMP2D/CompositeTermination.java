@@ -0,0 +1,57 @@
+/*
+Copyright (c) 2014 Matthew Simons
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package OMP2D;
+
+/**
+ * Stops as soon as any of a number of policies would, reporting the first one to fire
+ */
+public class CompositeTermination implements TerminationPolicy {
+	private final TerminationPolicy[] policies;
+	
+	/**
+	 * @param policies The policies to consult, in order
+	 */
+	public CompositeTermination(TerminationPolicy... policies) {
+		this.policies = policies.clone();
+	}
+
+	@Override
+	public Termination check(double[] energies, int previousAtoms, int atoms, long elapsed) {
+		for(TerminationPolicy policy : policies) {
+			Termination termination = policy.check(energies, previousAtoms, atoms, elapsed);
+			if(termination != null) {
+				return termination;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public int atomLimit() {
+		int limit = Integer.MAX_VALUE;
+		for(TerminationPolicy policy : policies) {
+			limit = Math.min(limit, policy.atomLimit());
+		}
+		return limit;
+	}
+}
@@ -0,0 +1,50 @@
+/*
+Copyright (c) 2014 Matthew Simons
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package OMP2D;
+
+/**
+ * Calculates the correlations between every atom of the separable dictionary 
+ * and the residue held by a workspace. The correlations are written row by row
+ * into the workspace's 5N x 5N inner product matrix, where row r and column c 
+ * refer to the Kronecker atom built from row atom r and column atom c.
+ * 
+ * Engines hold no per block state; anything they carry between iterations is
+ * kept in the workspace, so a single engine may be shared by many threads.
+ */
+public interface CorrelationEngine {
+	
+	/**
+	 * Calculates the correlations of the current residue
+	 * @param ws The workspace holding the residue
+	 * @param k The number of orthogonal atoms projected out of the residue so far
+	 */
+	public void correlate(OMP2DWorkspace ws, int k);
+	
+	/**
+	 * @param width The width of the blocks
+	 * @return The number of leading orthogonal atoms the solver needs to record as 
+	 * combinations of the selected atoms, see {@link OMP2DWorkspace#getCoordinates()}, 
+	 * or 0 if the engine does not use them
+	 */
+	public int coordinateRows(int width);
+}
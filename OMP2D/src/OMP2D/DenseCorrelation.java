@@ -0,0 +1,54 @@
+/*
+Copyright (c) 2014 Matthew Simons
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package OMP2D;
+
+/**
+ * Calculates the correlations directly as \f$Y R X\f$ on every iteration
+ */
+public class DenseCorrelation implements FusedCorrelationEngine {
+	public static final DenseCorrelation INSTANCE = new DenseCorrelation();
+	
+	@Override
+	public void correlate(OMP2DWorkspace ws, int k) {
+		ws.blockKernels.multiplyDictY(ws);
+		
+		//innerProducts = temp*dictX
+		Gemm.multiply(ws.temp, ws.dictionary.dictX, ws.innerProducts, ws.atoms, ws.width, ws.atoms);
+	}
+
+	/**
+	 * Streams the product of temp and dictX through the block kernels, comparing each 
+	 * correlation in the same order as {@link OMP2DWorkspace#findMaxAbs(int)}. Each sum
+	 * runs in the same order as {@link Gemm}, so both paths select the same atoms.
+	 */
+	@Override
+	public double correlateMaxAbs(OMP2DWorkspace ws, int k) {
+		ws.blockKernels.multiplyDictY(ws);
+		return ws.blockKernels.searchMaxAbs(ws, k);
+	}
+
+	@Override
+	public int coordinateRows(int width) {
+		return 0;
+	}
+}
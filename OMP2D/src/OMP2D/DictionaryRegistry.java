@@ -0,0 +1,56 @@
+/*
+Copyright (c) 2014 Matthew Simons
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package OMP2D;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Process wide registry of the dictionaries for each block size. Each dictionary is 
+ * built once, on first use, and then shared by every solver and thread.
+ */
+public final class DictionaryRegistry {
+	private static final ConcurrentMap<Integer, SeparableDictionary> DICTIONARIES = 
+			new ConcurrentHashMap<Integer, SeparableDictionary>();
+	
+	private DictionaryRegistry() {
+	}
+	
+	/**
+	 * Gets the shared dictionary for blocks of the given size
+	 * @param width The width and height of the block
+	 * @return The dictionary
+	 * @throws BadDimensionsException If no dictionary exists for the block size
+	 */
+	public static SeparableDictionary get(int width) throws BadDimensionsException {
+		SeparableDictionary dictionary = DICTIONARIES.get(width);
+		if(dictionary == null) {
+			SeparableDictionary created = new SeparableDictionary(width);
+			dictionary = DICTIONARIES.putIfAbsent(width, created);
+			if(dictionary == null) {
+				dictionary = created;
+			}
+		}
+		return dictionary;
+	}
+}
@@ -0,0 +1,211 @@
+/*
+Copyright (c) 2014 Matthew Simons
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package OMP2D;
+
+/**
+ * Applies the analysis operator of a {@link SeparableDictionary} with fast transforms.
+ * 
+ * The 5N atoms of the one dimensional dictionary are the redundant cosines 
+ * \f$c_k \cos(\pi (2i+1) k / 4N)\f$ and sines \f$s_k \sin(\pi (2i+1) k / 4N)\f$ for 
+ * \f$k < 2N\f$, followed by the N Dirac atoms. Both trigonometric halves are the real and 
+ * imaginary parts of a rotated 4N point DFT of the zero padded vector, which is calculated 
+ * as four N point FFTs. Two real vectors are transformed at once by packing them into the 
+ * real and imaginary parts of a complex vector, while the Dirac part is a copy.
+ * 
+ * A transform holds its own scratch buffers and is not thread safe.
+ */
+class DictionaryTransform {
+	private static final double STRUCTURE_TOL = 1e-12;
+	
+	final int width;
+	private final int doubleWidth, quadWidth;
+	private final int[] bitReverse;
+	private final double[] fftRe, fftIm;
+	private final double[] splitRe, splitIm;
+	private final double[] rotationRe, rotationIm;
+	private final double[] cosScale, sinScale;
+	private final double[] uRe, uIm, zRe, zIm;
+	
+	/**
+	 * Creates the transform for a dictionary
+	 * @param dictionary 
+	 * @throws IllegalArgumentException If the block width is not a power of two or the 
+	 * dictionary does not have the cosine, sine and Dirac structure
+	 */
+	DictionaryTransform(SeparableDictionary dictionary) {
+		width = dictionary.width;
+		if(width < 2 || (width & (width-1)) != 0) {
+			throw new IllegalArgumentException("Fast transforms need a power of two block width");
+		}
+		doubleWidth = 2*width;
+		quadWidth = 4*width;
+		
+		int bits = Integer.numberOfTrailingZeros(width);
+		bitReverse = new int[width];
+		for(int i = 0; i < width; i++) {
+			bitReverse[i] = Integer.reverse(i) >>> (32-bits);
+		}
+		
+		fftRe = new double[width/2];
+		fftIm = new double[width/2];
+		for(int t = 0; t < width/2; t++) {
+			fftRe[t] = Math.cos(2*Math.PI*t/width);
+			fftIm[t] = -Math.sin(2*Math.PI*t/width);
+		}
+		
+		//twiddles splitting the 4N point DFT into four N point DFTs
+		splitRe = new double[4*width];
+		splitIm = new double[4*width];
+		for(int r = 0; r < 4; r++) {
+			for(int i = 0; i < width; i++) {
+				splitRe[r*width+i] = Math.cos(2*Math.PI*i*r/quadWidth);
+				splitIm[r*width+i] = -Math.sin(2*Math.PI*i*r/quadWidth);
+			}
+		}
+		
+		//the half sample shift, and the normalisation of each atom with the halving 
+		//from separating the packed vectors folded in
+		rotationRe = new double[doubleWidth];
+		rotationIm = new double[doubleWidth];
+		cosScale = new double[doubleWidth];
+		sinScale = new double[doubleWidth];
+		for(int k = 0; k < doubleWidth; k++) {
+			rotationRe[k] = Math.cos(Math.PI*k/quadWidth);
+			rotationIm[k] = -Math.sin(Math.PI*k/quadWidth);
+			double cosNorm = 0, sinNorm = 0;
+			for(int i = 0; i < width; i++) {
+				double angle = Math.PI*(2*i+1)*k/quadWidth;
+				cosNorm += Math.cos(angle)*Math.cos(angle);
+				sinNorm += Math.sin(angle)*Math.sin(angle);
+			}
+			cosScale[k] = 0.5/Math.sqrt(cosNorm);
+			sinScale[k] = k == 0 ? 0 : -0.5/Math.sqrt(sinNorm);
+		}
+		
+		uRe = new double[width];
+		uIm = new double[width];
+		zRe = new double[quadWidth];
+		zIm = new double[quadWidth];
+		
+		verify(dictionary.dictY);
+	}
+	
+	/**
+	 * Checks the transform reproduces the rows of the dictionary
+	 * @param dictY
+	 */
+	private void verify(double[] dictY) {
+		double[] unit = new double[width];
+		double[] transformed = new double[5*width];
+		for(int i = 0; i < width; i++) {
+			unit[i] = 1;
+			analyse(unit, 0, 1, null, 0, 1, transformed, 0, null, 0, 1);
+			unit[i] = 0;
+			for(int m = 0; m < 5*width; m++) {
+				if(Math.abs(transformed[m] - dictY[m*width+i]) > STRUCTURE_TOL) {
+					throw new IllegalArgumentException("The dictionary is not made of cosines, sines and Diracs");
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Correlates two vectors with every atom of the one dimensional dictionary, so 
+	 * that \f$out_a = D a\f$ and \f$out_b = D b\f$ for the 5N x N dictionary D
+	 * @param a The first vector
+	 * @param aOffset The position of the first element of a
+	 * @param aStride The distance between successive elements of a
+	 * @param b The second vector, or null if there is only one
+	 * @param bOffset
+	 * @param bStride
+	 * @param outA Where the 5N correlations of a are written
+	 * @param outAOffset
+	 * @param outB Where the 5N correlations of b are written, or null if b is null
+	 * @param outBOffset
+	 * @param outStride The distance between successive correlations in the outputs
+	 */
+	void analyse(double[] a, int aOffset, int aStride, double[] b, int bOffset, int bStride,
+			double[] outA, int outAOffset, double[] outB, int outBOffset, int outStride) {
+		
+		for(int r = 0; r < 4; r++) {
+			int split = r*width;
+			for(int i = 0; i < width; i++) {
+				double re = a[aOffset + i*aStride];
+				double im = b == null ? 0 : b[bOffset + i*bStride];
+				int j = bitReverse[i];
+				uRe[j] = re*splitRe[split+i] - im*splitIm[split+i];
+				uIm[j] = re*splitIm[split+i] + im*splitRe[split+i];
+			}
+			fft();
+			for(int m = 0; m < width; m++) {
+				zRe[r + 4*m] = uRe[m];
+				zIm[r + 4*m] = uIm[m];
+			}
+		}
+		
+		final int mask = quadWidth-1;
+		for(int k = 0; k < doubleWidth; k++) {
+			int mirror = (quadWidth-k) & mask;
+			double re = zRe[k], im = zIm[k];
+			double mirrorRe = zRe[mirror], mirrorIm = zIm[mirror];
+			
+			double aRe = re + mirrorRe, aIm = im - mirrorIm;
+			outA[outAOffset + k*outStride] = cosScale[k]*(aRe*rotationRe[k] - aIm*rotationIm[k]);
+			outA[outAOffset + (doubleWidth+k)*outStride] = sinScale[k]*(aRe*rotationIm[k] + aIm*rotationRe[k]);
+			
+			if(outB != null) {
+				double bRe = im + mirrorIm, bIm = mirrorRe - re;
+				outB[outBOffset + k*outStride] = cosScale[k]*(bRe*rotationRe[k] - bIm*rotationIm[k]);
+				outB[outBOffset + (doubleWidth+k)*outStride] = sinScale[k]*(bRe*rotationIm[k] + bIm*rotationRe[k]);
+			}
+		}
+		
+		for(int i = 0; i < width; i++) {
+			outA[outAOffset + (quadWidth+i)*outStride] = a[aOffset + i*aStride];
+			if(outB != null) {
+				outB[outBOffset + (quadWidth+i)*outStride] = b[bOffset + i*bStride];
+			}
+		}
+	}
+	
+	/**
+	 * Radix 2 FFT of the bit reversed vector in uRe and uIm, in place
+	 */
+	private void fft() {
+		for(int half = 1; half < width; half *= 2) {
+			int step = width / (2*half);
+			for(int start = 0; start < width; start += 2*half) {
+				for(int j = 0; j < half; j++) {
+					int even = start+j, odd = even+half;
+					double wRe = fftRe[j*step], wIm = fftIm[j*step];
+					double oddRe = uRe[odd]*wRe - uIm[odd]*wIm;
+					double oddIm = uRe[odd]*wIm + uIm[odd]*wRe;
+					uRe[odd] = uRe[even] - oddRe;
+					uIm[odd] = uIm[even] - oddIm;
+					uRe[even] += oddRe;
+					uIm[even] += oddIm;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,190 @@
+/*
+Copyright (c) 2014 Matthew Simons
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package OMP2D;
+
+/**
+ * Calculates the correlations \f$Y R X\f$ of a single precision residue, as 
+ * {@link DenseCorrelation} does in double precision. Each row of either product is
+ * accumulated as a sum of rows, which are kept in arrays of their own so that the JIT 
+ * compiler can tell they do not overlap and vectorise the sums.
+ */
+final class FloatCorrelation {
+	
+	private FloatCorrelation() {
+	}
+	
+	/**
+	 * Calculates the correlations of the residue into the float workspace's inner products
+	 * @param fw
+	 */
+	static void correlate(FloatWorkspace fw) {
+		final int atoms = fw.atoms;
+		float[] innerProducts = fw.getInnerProducts();
+		float[] correlations = fw.correlationRow;
+		multiplyDictY(fw);
+		
+		for(int m = 0; m < atoms; m++) {
+			correlateRow(fw, m);
+			System.arraycopy(correlations, 0, innerProducts, m*atoms, atoms);
+		}
+	}
+	
+	/**
+	 * Calculates the correlations of the residue, keeping only the largest, whose atoms 
+	 * are recorded as the k-th selection of the workspace
+	 * @param fw
+	 * @param ws
+	 * @param k The number of atoms selected so far
+	 * @return The largest absolute correlation
+	 * @see DenseCorrelation#correlateMaxAbs(OMP2DWorkspace, int)
+	 */
+	static float correlateMaxAbs(FloatWorkspace fw, OMP2DWorkspace ws, int k) {
+		final int atoms = fw.atoms;
+		float[] correlations = fw.correlationRow;
+		multiplyDictY(fw);
+		
+		float maxAbs = 0;
+		int maxAbsRow = 0, maxAbsCol = 0;
+		for(int m = 0; m < atoms; m++) {
+			correlateRow(fw, m);
+			for(int q = 0; q < atoms; q++) {
+				float abs = Math.abs(correlations[q]);
+				if(abs > maxAbs) {
+					maxAbs = abs;
+					maxAbsRow = m;
+					maxAbsCol = q;
+				}
+			}
+		}
+		ws.rowAtoms[k] = maxAbsRow;
+		ws.colAtoms[k] = maxAbsCol;
+		return maxAbs;
+	}
+	
+	/**
+	 * Calculates the correlations of the residue, keeping the positions of those within
+	 * a margin of the largest absolute correlation, in the order of a row-major scan
+	 * @param fw
+	 * @param margin How far below the largest a correlation may be kept
+	 * @param positions Where to write the positions of the correlations kept
+	 * @return The number of positions written, or -1 if there are more than fit
+	 */
+	static int correlateNearMax(FloatWorkspace fw, float margin, int[] positions) {
+		final int atoms = fw.atoms;
+		final int limit = positions.length;
+		float[] correlations = fw.correlationRow;
+		float[] values = fw.getCandidateValues(limit);
+		multiplyDictY(fw);
+		
+		float maxAbs = 0, threshold = -margin;
+		int count = 0;
+		for(int m = 0; m < atoms; m++) {
+			correlateRow(fw, m);
+			for(int q = 0; q < atoms; q++) {
+				float abs = Math.abs(correlations[q]);
+				if(abs < threshold) {
+					continue;
+				}
+				if(abs > maxAbs) {
+					maxAbs = abs;
+					threshold = maxAbs - margin;
+				}
+				if(count == limit) {
+					count = discardBelow(values, positions, count, threshold);
+					if(count == limit) {
+						return -1;
+					}
+				}
+				values[count] = abs;
+				positions[count++] = m*atoms + q;
+			}
+		}
+		return discardBelow(values, positions, count, threshold);
+	}
+	
+	/**
+	 * Removes the kept correlations which have fallen below the threshold
+	 * @return The number of correlations still kept
+	 */
+	private static int discardBelow(float[] values, int[] positions, int count, float threshold) {
+		int kept = 0;
+		for(int i = 0; i < count; i++) {
+			if(values[i] >= threshold) {
+				values[kept] = values[i];
+				positions[kept++] = positions[i];
+			}
+		}
+		return kept;
+	}
+	
+	/**
+	 * Calculates row m of temp*dictX into the workspace's correlation row
+	 * @param fw
+	 * @param m
+	 */
+	private static void correlateRow(FloatWorkspace fw, int m) {
+		final int width = fw.width;
+		final int atoms = fw.atoms;
+		float[] temp = fw.tempRows[m];
+		float[] correlations = fw.correlationRow;
+		
+		for(int q = 0; q < atoms; q++) {
+			correlations[q] = 0;
+		}
+		for(int p = 0; p < width; p++) {
+			float t = temp[p];
+			float[] dictX = fw.dictXRows[p];
+			for(int q = 0; q < atoms; q++) {
+				correlations[q] += t*dictX[q];
+			}
+		}
+	}
+	
+	/**
+	 * Calculates temp = dictY*residue, accumulated a row of the residue at a time
+	 * @param fw
+	 */
+	private static void multiplyDictY(FloatWorkspace fw) {
+		final int width = fw.width;
+		final int atoms = fw.atoms;
+		float[] dictY = fw.dictY;
+		for(int p = 0; p < width; p++) {
+			System.arraycopy(fw.residue, p*width, fw.residueRows[p], 0, width);
+		}
+		
+		for(int m = 0; m < atoms; m++) {
+			float[] temp = fw.tempRows[m];
+			int row = m*width;
+			for(int q = 0; q < width; q++) {
+				temp[q] = 0;
+			}
+			for(int p = 0; p < width; p++) {
+				float y = dictY[row+p];
+				float[] residue = fw.residueRows[p];
+				for(int q = 0; q < width; q++) {
+					temp[q] += y*residue[q];
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,62 @@
+/*
+Copyright (c) 2014 Matthew Simons
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package OMP2D;
+
+import java.util.Arrays;
+
+/**
+ * The tables of a {@link SeparableDictionary} rounded to single precision, for the 
+ * solvers which search or approximate in float. They are only built, by 
+ * {@link SeparableDictionary#getFloatTables()}, once such a solver needs them.
+ */
+final class FloatDictionary {
+	/** Y rounded to single precision */
+	final float[] dictY;
+	/** \f$X^T\f$ rounded to single precision */
+	final float[] dictXTransposed;
+	/** The rows of X rounded to single precision, each in its own array */
+	final float[][] dictXRows;
+	
+	FloatDictionary(SeparableDictionary dictionary) {
+		int width = dictionary.width;
+		int atoms = dictionary.atoms;
+		dictY = toFloat(dictionary.dictY);
+		dictXRows = new float[width][];
+		for(int p = 0; p < width; p++) {
+			dictXRows[p] = toFloat(Arrays.copyOfRange(dictionary.dictX, p*atoms, (p+1)*atoms));
+		}
+		dictXTransposed = toFloat(dictionary.dictXTransposed);
+	}
+	
+	/**
+	 * @param table
+	 * @return The table rounded to single precision
+	 */
+	private static float[] toFloat(double[] table) {
+		float[] rounded = new float[table.length];
+		for(int i = 0; i < table.length; i++) {
+			rounded[i] = (float) table[i];
+		}
+		return rounded;
+	}
+}
@@ -0,0 +1,270 @@
+/*
+Copyright (c) 2014 Matthew Simons
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package OMP2D;
+
+/**
+ * Approximates a block as {@link OMP2D} does, but keeps the block, residue, dictionaries 
+ * and orthogonal and biorthogonal atoms in single precision, halving the memory they 
+ * occupy and the traffic of every product. The residual energy is tracked in double
+ * precision. 
+ * 
+ * Long inner products, i.e. those over whole blocks, may optionally use compensated 
+ * summation to recover most of the accuracy lost to rounding.
+ */
+public class FloatOMP2D extends AbstractBlockSolver {
+	private final int REORTH_ITERATIONS = 2;
+	private final float DEPENDENCE_TOL = 1e-4f;
+	private final int RESYNC_INTERVAL = 32;
+	private final double RESYNC_TOL = 1e-4;
+	
+	private boolean compensated;
+	
+	/**
+	 * Creates a new single precision OMP2D block processor
+	 * @param imageData The intensity values of the image
+	 * @param width The width of the image
+	 * @param tol The tolerance level to be achieved
+	 * @param maxIterations The maximum number of iterations to be done without meeting the tolerance level
+	 */
+	public FloatOMP2D(double[] imageData, int width, int id, double tol, int maxIterations) {
+		super(imageData, width, id, tol, maxIterations);
+	}
+	
+	/**
+	 * Sets whether inner products over whole blocks use Kahan summation. Defaults to false.
+	 * @param compensated
+	 */
+	public void setCompensatedSummation(boolean compensated) {
+		this.compensated = compensated;
+	}
+	
+	/**
+	 * The correlations are always calculated densely in single precision
+	 * @throws IllegalArgumentException If the engine is not {@link DenseCorrelation}
+	 */
+	@Override
+	public void setCorrelationEngine(CorrelationEngine engine) {
+		if(engine != DenseCorrelation.INSTANCE) {
+			throw new IllegalArgumentException("The float solver calculates its own correlations");
+		}
+		super.setCorrelationEngine(engine);
+	}
+	
+	/**
+	 * Calculates the approximated block 
+	 * @throws BadDimensionsException
+	 */
+	@Override
+	public void calcBlock() throws BadDimensionsException {
+		OMP2DWorkspace ws = getWorkspace();
+		ws.reset(imageData);
+		FloatWorkspace fw = ws.getFloatWorkspace();
+		fw.reset(imageData);
+		
+		final double energy = Matrix.getFrobeniusNorm(fw.residue);
+		double residualEnergy = energy;
+		startBlock(ws, energy);
+		
+		final int maxAtoms = getMaxAtoms();
+		int rows = 0;
+		while(rows < maxAtoms) {
+			int found = findAtoms(ws, fw, rows);
+			
+			if(found == 0) { 
+				//no improvements to be made
+				noImprovement();
+				return;
+			}
+			
+			int added = 0;
+			for(int s = 0; s < found; s++) {
+				moveSelection(ws, rows+s, rows+added);
+				if(addAtom(ws, fw, rows+added)) {
+					added++;
+				}
+			}
+			if(added == 0) {
+				//the atoms are already spanned by those selected
+				termination = Termination.DEPENDENT_ATOMS;
+				break;
+			}
+			
+			for(int k = rows; k < rows+added; k++) {
+				float projection = updateResidual(fw, k);
+				residualEnergy -= (double) projection*projection;
+				recordEnergy(ws, k+1, residualEnergy);
+			}
+			if(debug) {
+				double actual = Matrix.getFrobeniusNorm(fw.residue);
+				if(Math.abs(actual - residualEnergy) > RESYNC_TOL*energy) {
+					throw new IllegalStateException("Block " + BLOCK_ID + ": tracked residual energy " 
+							+ residualEnergy + " differs from " + actual);
+				}
+			}
+			if(rows / RESYNC_INTERVAL != (rows+added) / RESYNC_INTERVAL) {
+				residualEnergy = Matrix.getFrobeniusNorm(fw.residue);
+			}
+			rows += added;
+			
+			if(isFinished(ws, rows, residualEnergy)) {
+				break;
+			}
+		}
+		processResults(fw, rows);
+	}
+	
+	/**
+	 * Correlates the residue with the dictionary and selects the atoms to add
+	 * @param ws
+	 * @param fw
+	 * @param k The number of atoms selected so far
+	 * @return The number of atoms selected from index k
+	 */
+	private int findAtoms(OMP2DWorkspace ws, FloatWorkspace fw, int k) {
+		if(!selector.usesCorrelations()) {
+			return selectAtoms(ws, k, FloatCorrelation.correlateMaxAbs(fw, ws, k));
+		}
+		FloatCorrelation.correlate(fw);
+		float[] innerProducts = fw.getInnerProducts();
+		for(int i = 0; i < innerProducts.length; i++) {
+			ws.innerProducts[i] = innerProducts[i];
+		}
+		return selectAtoms(ws, k);
+	}
+	
+	/**
+	 * Orthonormalizes the k-th selected atom against those before it and updates the 
+	 * biorthogonal atoms
+	 * @param ws
+	 * @param fw
+	 * @param k
+	 * @return False if the atom is linearly dependent on those already selected
+	 */
+	private boolean addAtom(OMP2DWorkspace ws, FloatWorkspace fw, int k) {
+		final int size = fw.size;
+		final int offset = k*size;
+		float[] orthogonal = fw.getOrthogonal();
+		float[] beta = fw.getBeta();
+		kronecker(fw, ws.colAtoms[k], ws.rowAtoms[k]);
+		System.arraycopy(fw.atom, 0, orthogonal, offset, size);
+		
+		//modified Gram-Schmidt, repeated so that the atom stays orthogonal in single precision
+		for(int r = 0; r < REORTH_ITERATIONS; r++) {
+			for(int j = 0; j < k; j++) {
+				float scalar = dot(orthogonal, j*size, orthogonal, offset, size);
+				for(int i = 0; i < size; i++) {
+					orthogonal[offset+i] -= scalar*orthogonal[j*size+i];
+				}
+			}
+		}
+		
+		float rowNorm = (float) Math.sqrt(dot(orthogonal, offset, orthogonal, offset, size));
+		float atomNorm = (float) Math.sqrt(dot(fw.atom, 0, fw.atom, 0, size));
+		if(!(rowNorm > DEPENDENCE_TOL*atomNorm)) {
+			return false;
+		}
+		Matrix.scale(orthogonal, offset, size, 1/rowNorm);
+		
+		//the new row of beta starts as a copy of the new orthogonal atom
+		System.arraycopy(orthogonal, offset, beta, offset, size);
+		float[] alpha = fw.getAlpha();
+		for(int j = 0; j < k; j++) {
+			alpha[j] = dot(beta, j*size, fw.atom, 0, size) / rowNorm;
+		}
+		for(int j = 0; j < k; j++) {
+			int row = j*size;
+			for(int i = 0; i < size; i++) {
+				beta[row+i] -= alpha[j]*beta[offset+i];
+			}
+		}
+		Matrix.scale(beta, offset, size, 1/rowNorm);
+		return true;
+	}
+	
+	/**
+	 * Writes the Kronecker product of the chosen atoms into the float workspace
+	 * @param fw
+	 * @param colAtom
+	 * @param rowAtom
+	 */
+	private void kronecker(FloatWorkspace fw, int colAtom, int rowAtom) {
+		float[] dict = fw.dictY;
+		for(int j = 0; j < WIDTH; j++) {
+			float scaleFactor = dict[colAtom*WIDTH + j];
+			for(int i = 0; i < WIDTH; i++) {
+				fw.atom[j*WIDTH + i] = scaleFactor*dict[rowAtom*WIDTH + i]; 
+			}
+		}
+	}
+	
+	/**
+	 * Projects an orthogonal atom out of the residue
+	 * @param fw
+	 * @param row The row of the orthogonal matrix to project out
+	 * @return The projection of the block onto the atom
+	 */
+	private float updateResidual(FloatWorkspace fw, int row) {
+		float[] m = fw.getOrthogonal();
+		float[] residue = fw.residue;
+		int offset = row*fw.size;
+		float scalar = dot(fw.image, 0, m, offset, fw.size);
+		for(int j = 0; j < WIDTH; j++) {
+			for(int i = 0; i < WIDTH; i++) {
+				residue[j*WIDTH+i] -= m[offset+i*WIDTH+j]*scalar;
+			}
+		}
+		return scalar;
+	}
+	
+	/**
+	 * Finds the approximated block and its coefficients
+	 * @param fw
+	 * @param rows The number of rows in beta
+	 */
+	private void processResults(FloatWorkspace fw, int rows) {
+		final int size = fw.size;
+		float[] beta = fw.getBeta();
+		coefficients = new double[rows];
+		for(int j = 0; j < rows; j++) {
+			coefficients[j] = dot(beta, j*size, fw.image, 0, size);
+		}
+
+		approxData = new double[size];
+		approxBlock = null;
+		for(int j = 0; j < WIDTH; j++) {
+			for(int i = 0; i < WIDTH; i++) {
+				approxData[i*WIDTH+j] = fw.imageTransposed[j*WIDTH+i] - fw.residue[j*WIDTH+i];
+			}
+		}
+	}
+	
+	/**
+	 * An inner product over a whole block, compensated if requested
+	 */
+	private float dot(float[] matrix1, int offset1, float[] matrix2, int offset2, int length) {
+		if(compensated) {
+			return Matrix.compensatedInnerProduct(matrix1, offset1, matrix2, offset2, length);
+		}
+		return Matrix.innerProduct(matrix1, offset1, matrix2, offset2, length);
+	}
+}
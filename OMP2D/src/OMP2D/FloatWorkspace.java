@@ -0,0 +1,129 @@
+/*
+Copyright (c) 2014 Matthew Simons
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package OMP2D;
+
+/**
+ * Single precision buffers, attached to an {@link OMP2DWorkspace}, for the solvers 
+ * which search or approximate in float. Each buffer mirrors the double precision 
+ * buffer of the same name and is allocated the first time it is requested.
+ */
+class FloatWorkspace {
+	final int width, size, atoms, capacity;
+	final float[] dictY, dictXTransposed;
+	final float[][] dictXRows;
+	
+	final float[] image, imageTransposed;
+	final float[] residue;
+	final float[] correlationRow;
+	final float[][] residueRows, tempRows;
+	final float[] atom;
+	private float[] innerProducts;
+	private float[] orthogonal, beta;
+	private float[] alpha;
+	private float[] candidateValues;
+	
+	FloatWorkspace(OMP2DWorkspace ws) {
+		width = ws.width;
+		size = ws.size;
+		atoms = ws.atoms;
+		capacity = ws.capacity;
+		FloatDictionary tables = ws.dictionary.getFloatTables();
+		dictY = tables.dictY;
+		dictXRows = tables.dictXRows;
+		dictXTransposed = tables.dictXTransposed;
+		
+		image = new float[size];
+		imageTransposed = new float[size];
+		residue = new float[size];
+		residueRows = new float[width][width];
+		tempRows = new float[atoms][width];
+		correlationRow = new float[atoms];
+		atom = new float[size];
+	}
+	
+	/**
+	 * Copies the block, rounded to single precision, and makes it the residue
+	 * @param block The block, row by row
+	 */
+	void reset(double[] block) {
+		for(int j = 0; j < width; j++) {
+			for(int i = 0; i < width; i++) {
+				float value = (float) block[j*width+i];
+				image[j*width+i] = value;
+				imageTransposed[i*width+j] = value;
+			}
+		}
+		System.arraycopy(imageTransposed, 0, residue, 0, size);
+	}
+	
+	/**
+	 * @return A 5N x 5N buffer for the correlations
+	 */
+	float[] getInnerProducts() {
+		if(innerProducts == null) {
+			innerProducts = new float[atoms*atoms];
+		}
+		return innerProducts;
+	}
+	
+	/**
+	 * @return The capacity x N^2 orthonormal atoms
+	 */
+	float[] getOrthogonal() {
+		if(orthogonal == null) {
+			orthogonal = new float[capacity*size];
+		}
+		return orthogonal;
+	}
+	
+	/**
+	 * @return The capacity x N^2 biorthogonal atoms
+	 */
+	float[] getBeta() {
+		if(beta == null) {
+			beta = new float[capacity*size];
+		}
+		return beta;
+	}
+	
+	/**
+	 * @param length
+	 * @return A buffer of at least the given length for the values of candidate atoms
+	 */
+	float[] getCandidateValues(int length) {
+		if(candidateValues == null || candidateValues.length < length) {
+			candidateValues = new float[length];
+		}
+		return candidateValues;
+	}
+	
+	/**
+	 * @return A buffer of length capacity
+	 */
+	float[] getAlpha() {
+		if(alpha == null) {
+			alpha = new float[capacity];
+		}
+		return alpha;
+	}
+}
@@ -0,0 +1,41 @@
+/*
+Copyright (c) 2014 Matthew Simons
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package OMP2D;
+
+/**
+ * A correlation engine which can also find the largest correlation while calculating 
+ * them, so that the 5N x 5N inner product matrix is never written or scanned again. 
+ * Solvers use this when their {@link AtomSelector} only needs the largest correlation.
+ */
+public interface FusedCorrelationEngine extends CorrelationEngine {
+	
+	/**
+	 * Calculates the correlations of the current residue, keeping only the largest. Its 
+	 * atoms are recorded as the k-th selection exactly as {@link OMP2DWorkspace#findMaxAbs(int)} 
+	 * would, and the inner product matrix is left untouched.
+	 * @param ws The workspace holding the residue
+	 * @param k The number of orthogonal atoms projected out of the residue so far
+	 * @return The largest absolute correlation
+	 */
+	public double correlateMaxAbs(OMP2DWorkspace ws, int k);
+}
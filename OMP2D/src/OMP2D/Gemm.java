@@ -0,0 +1,260 @@
+/*
+Copyright (c) 2014 Matthew Simons
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package OMP2D;
+
+/**
+ * General matrix multiplication, \f$C = A B\f$, of row-major arrays or {@link MatrixView}s.
+ * 
+ * The product is computed in blocks sized to stay in cache. Each block of B is packed 
+ * into contiguous panels of {@value #NR} columns, and each block of A into panels of 
+ * {@value #MR} rows, so the innermost kernel reads both operands sequentially while it 
+ * keeps a {@value #MR}x{@value #NR} tile of C in registers. 
+ * 
+ * Every element of C is summed over the shared dimension in order, starting from 0, 
+ * so while that dimension fits in one block ({@value #KC}) the result matches a plain 
+ * triple loop exactly.
+ */
+public class Gemm {
+	static final int MR = 4;
+	static final int NR = 4;
+	static final int KC = 256;
+	static final int MC = 64;
+	static final int NC = 512;
+	
+	/**
+	 * Multiplies two row-major matrices into a new array
+	 * @param matrix1 A matrix defined as \f$A^{m \times n}\f$
+	 * @param matrix2 A matrix defined as \f$B^{n \times q}\f$
+	 * @param mMax
+	 * @param nMax
+	 * @param qMax
+	 * @return The m x q product
+	 */
+	public static double[] multiply(double[] matrix1, double[] matrix2, int mMax, int nMax, int qMax) {
+		double[] result = new double[mMax*qMax];
+		multiply(matrix1, matrix2, result, mMax, nMax, qMax);
+		return result;
+	}
+	
+	/**
+	 * Multiplies two row-major matrices, overwriting an existing array
+	 * @param matrix1 A matrix defined as \f$A^{m \times n}\f$
+	 * @param matrix2 A matrix defined as \f$B^{n \times q}\f$
+	 * @param result The array of at least m*q elements to be overwritten with the product
+	 * @param mMax
+	 * @param nMax
+	 * @param qMax
+	 */
+	public static void multiply(double[] matrix1, double[] matrix2, double[] result, int mMax, int nMax, int qMax) {
+		multiply(mMax, nMax, qMax, matrix1, 0, nMax, matrix2, 0, qMax, result, 0, qMax);
+	}
+	
+	/**
+	 * Multiplies two matrices held within flat arrays, overwriting a third. Each matrix 
+	 * is given by the index of its first element and its stride, the distance between 
+	 * the starts of consecutive rows, so sub-blocks of larger matrices may be used.
+	 * The result must not overlap either operand.
+	 * @param mMax The number of rows of A and C
+	 * @param nMax The number of columns of A and rows of B
+	 * @param qMax The number of columns of B and C
+	 * @param a
+	 * @param aOffset
+	 * @param aStride
+	 * @param b
+	 * @param bOffset
+	 * @param bStride
+	 * @param c
+	 * @param cOffset
+	 * @param cStride
+	 */
+	public static void multiply(int mMax, int nMax, int qMax, double[] a, int aOffset, int aStride, 
+			double[] b, int bOffset, int bStride, double[] c, int cOffset, int cStride) {
+		multiply(mMax, nMax, qMax, a, aOffset, aStride, 1, b, bOffset, bStride, 1, c, cOffset, cStride, 1);
+	}
+	
+	/**
+	 * Multiplies two views, overwriting a third. Any of them may be transposed or 
+	 * a sub-block of a larger matrix. The result must not overlap either operand.
+	 * @param a A view of \f$A^{m \times n}\f$
+	 * @param b A view of \f$B^{n \times q}\f$
+	 * @param c A view of m x q elements to be overwritten with the product
+	 * @throws BadDimensionsException
+	 */
+	public static void multiply(MatrixView a, MatrixView b, MatrixView c) throws BadDimensionsException {
+		if(a.width != b.height || c.height != a.height || c.width != b.width) {
+			throw new BadDimensionsException("Expected views of (m,n)x(n,q) into (m,q)\n" +
+					"Recieved (" + a.height + "," + a.width + ")x(" + b.height + "," + b.width + 
+					") into (" + c.height + "," + c.width + ")");
+		}
+		multiply(a.height, a.width, b.width, a.data, a.offset, a.rowStride, a.colStride, 
+				b.data, b.offset, b.rowStride, b.colStride, c.data, c.offset, c.rowStride, c.colStride);
+	}
+	
+	/**
+	 * Multiplies matrices given by the index of their first element and the distances 
+	 * between consecutive rows and consecutive columns
+	 */
+	private static void multiply(int mMax, int nMax, int qMax, double[] a, int aOffset, int aRowStride, int aColStride, 
+			double[] b, int bOffset, int bRowStride, int bColStride, double[] c, int cOffset, int cRowStride, int cColStride) {
+		if(mMax <= 0 || qMax <= 0) {
+			return;
+		}
+		if(nMax <= 0) {
+			for(int m = 0; m < mMax; m++) {
+				for(int q = 0; q < qMax; q++) {
+					c[cOffset + m*cRowStride + q*cColStride] = 0;
+				}
+			}
+			return;
+		}
+		int kc = Math.min(nMax, KC);
+		BufferPool pool = BufferPool.forCurrentThread();
+		double[] aPacked = pool.acquire(roundUp(Math.min(mMax, MC), MR)*kc);
+		double[] bPacked = pool.acquire(roundUp(Math.min(qMax, NC), NR)*kc);
+		
+		for(int jc = 0; jc < qMax; jc += NC) {
+			int nc = Math.min(NC, qMax - jc);
+			for(int pc = 0; pc < nMax; pc += KC) {
+				int pLength = Math.min(KC, nMax - pc);
+				boolean accumulate = pc > 0;
+				packB(b, bOffset + pc*bRowStride + jc*bColStride, bRowStride, bColStride, pLength, nc, bPacked);
+				for(int ic = 0; ic < mMax; ic += MC) {
+					int mc = Math.min(MC, mMax - ic);
+					packA(a, aOffset + ic*aRowStride + pc*aColStride, aRowStride, aColStride, mc, pLength, aPacked);
+					for(int jr = 0; jr < nc; jr += NR) {
+						int cols = Math.min(NR, nc - jr);
+						for(int ir = 0; ir < mc; ir += MR) {
+							int rows = Math.min(MR, mc - ir);
+							kernel(pLength, aPacked, ir*pLength, bPacked, jr*pLength, 
+									c, cOffset + (ic+ir)*cRowStride + (jc+jr)*cColStride, cRowStride, cColStride, 
+									rows, cols, accumulate);
+						}
+					}
+				}
+			}
+		}
+		pool.release(aPacked);
+		pool.release(bPacked);
+	}
+	
+	private static int roundUp(int value, int multiple) {
+		return (value + multiple - 1)/multiple*multiple;
+	}
+	
+	/**
+	 * Copies a block of A into panels of MR rows, each stored column by column, 
+	 * padding the last panel with zeros
+	 */
+	private static void packA(double[] a, int offset, int rowStride, int step, int rows, int pLength, double[] packed) {
+		for(int ir = 0; ir < rows; ir += MR) {
+			int panel = ir*pLength;
+			int panelRows = Math.min(MR, rows - ir);
+			for(int i = 0; i < MR; i++) {
+				if(i < panelRows) {
+					int row = offset + (ir+i)*rowStride;
+					for(int p = 0; p < pLength; p++) {
+						packed[panel + p*MR + i] = a[row + p*step];
+					}
+				} else {
+					for(int p = 0; p < pLength; p++) {
+						packed[panel + p*MR + i] = 0;
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Copies a block of B into panels of NR columns, each stored row by row, 
+	 * padding the last panel with zeros
+	 */
+	private static void packB(double[] b, int offset, int rowStride, int step, int pLength, int cols, double[] packed) {
+		for(int jr = 0; jr < cols; jr += NR) {
+			int panel = jr*pLength;
+			int panelCols = Math.min(NR, cols - jr);
+			for(int p = 0; p < pLength; p++) {
+				int row = offset + p*rowStride + jr*step;
+				int dest = panel + p*NR;
+				int j = 0;
+				for(; j < panelCols; j++) {
+					packed[dest + j] = b[row + j*step];
+				}
+				for(; j < NR; j++) {
+					packed[dest + j] = 0;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Multiplies a panel of A by a panel of B, holding the MR x NR tile of C in registers,
+	 * and writes or adds the rows x cols part of the tile that lies within C
+	 */
+	private static void kernel(int pLength, double[] aPacked, int aPanel, double[] bPacked, int bPanel, 
+			double[] c, int cOffset, int cStride, int step, int rows, int cols, boolean accumulate) {
+		double c00 = 0, c01 = 0, c02 = 0, c03 = 0;
+		double c10 = 0, c11 = 0, c12 = 0, c13 = 0;
+		double c20 = 0, c21 = 0, c22 = 0, c23 = 0;
+		double c30 = 0, c31 = 0, c32 = 0, c33 = 0;
+		int ai = aPanel, bi = bPanel;
+		for(int p = 0; p < pLength; p++, ai += MR, bi += NR) {
+			double a0 = aPacked[ai], a1 = aPacked[ai+1], a2 = aPacked[ai+2], a3 = aPacked[ai+3];
+			double b0 = bPacked[bi], b1 = bPacked[bi+1], b2 = bPacked[bi+2], b3 = bPacked[bi+3];
+			c00 += a0*b0; c01 += a0*b1; c02 += a0*b2; c03 += a0*b3;
+			c10 += a1*b0; c11 += a1*b1; c12 += a1*b2; c13 += a1*b3;
+			c20 += a2*b0; c21 += a2*b1; c22 += a2*b2; c23 += a2*b3;
+			c30 += a3*b0; c31 += a3*b1; c32 += a3*b2; c33 += a3*b3;
+		}
+		if(rows == MR && cols == NR && step == 1) {
+			store(c, cOffset, c00, c01, c02, c03, accumulate);
+			store(c, cOffset + cStride, c10, c11, c12, c13, accumulate);
+			store(c, cOffset + 2*cStride, c20, c21, c22, c23, accumulate);
+			store(c, cOffset + 3*cStride, c30, c31, c32, c33, accumulate);
+			return;
+		}
+		store(c, cOffset, step, cols, c00, c01, c02, c03, accumulate);
+		if(rows > 1) store(c, cOffset + cStride, step, cols, c10, c11, c12, c13, accumulate);
+		if(rows > 2) store(c, cOffset + 2*cStride, step, cols, c20, c21, c22, c23, accumulate);
+		if(rows > 3) store(c, cOffset + 3*cStride, step, cols, c30, c31, c32, c33, accumulate);
+	}
+	
+	/**
+	 * Writes or adds the first cols elements of a row of the tile, a step apart
+	 */
+	private static void store(double[] c, int offset, int step, int cols, 
+			double c0, double c1, double c2, double c3, boolean accumulate) {
+		for(int j = 0; j < cols; j++) {
+			double value = j == 0 ? c0 : j == 1 ? c1 : j == 2 ? c2 : c3;
+			int index = offset + j*step;
+			c[index] = accumulate ? c[index] + value : value;
+		}
+	}
+	
+	private static void store(double[] c, int offset, double c0, double c1, double c2, double c3, boolean accumulate) {
+		if(accumulate) {
+			c[offset] += c0; c[offset+1] += c1; c[offset+2] += c2; c[offset+3] += c3;
+		} else {
+			c[offset] = c0; c[offset+1] = c1; c[offset+2] = c2; c[offset+3] = c3;
+		}
+	}
+}
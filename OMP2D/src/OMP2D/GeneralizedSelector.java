@@ -0,0 +1,82 @@
+/*
+Copyright (c) 2014 Matthew Simons
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package OMP2D;
+
+/**
+ * Generalised OMP: selects the S atoms with the largest absolute correlations on 
+ * every iteration. Ties are broken in favour of the atom found first, row by row.
+ */
+public class GeneralizedSelector implements AtomSelector {
+	private final int atomsPerIteration;
+	
+	/**
+	 * @param atomsPerIteration The number of atoms, S, to select on each iteration
+	 */
+	public GeneralizedSelector(int atomsPerIteration) {
+		if(atomsPerIteration < 1) {
+			throw new IllegalArgumentException("At least one atom must be selected per iteration");
+		}
+		this.atomsPerIteration = atomsPerIteration;
+	}
+
+	@Override
+	public int select(OMP2DWorkspace ws, int k, int limit, double maxAbs) {
+		int count = Math.min(atomsPerIteration, limit);
+		if(count == 1) {
+			return 1;
+		}
+		
+		final int atoms = ws.atoms;
+		double[] innerProducts = ws.innerProducts;
+		double[] largest = ws.getSelectionValues();
+		int[] positions = ws.getSelectionPositions();
+		
+		//insertion sort into the largest 'count' values seen so far
+		int found = 0;
+		for(int i = 0; i < atoms*atoms; i++) {
+			double abs = Math.abs(innerProducts[i]);
+			if(found == count && abs <= largest[found-1]) {
+				continue;
+			}
+			int j = found < count ? found++ : found-1;
+			while(j > 0 && largest[j-1] < abs) {
+				largest[j] = largest[j-1];
+				positions[j] = positions[j-1];
+				j--;
+			}
+			largest[j] = abs;
+			positions[j] = i;
+		}
+		
+		for(int j = 0; j < found; j++) {
+			ws.rowAtoms[k+j] = positions[j] / atoms;
+			ws.colAtoms[k+j] = positions[j] % atoms;
+		}
+		return found;
+	}
+	
+	@Override
+	public boolean usesCorrelations() {
+		return true;
+	}
+}
@@ -0,0 +1,93 @@
+/*
+Copyright (c) 2014 Matthew Simons
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package OMP2D;
+
+/**
+ * Block kernels for any width, reading it from a field
+ */
+class GenericBlockKernels extends BlockKernels {
+	private static final int TILE = 4;
+	
+	private final int width, atoms;
+	
+	GenericBlockKernels(int width) {
+		this.width = width;
+		this.atoms = 5*width;
+	}
+	
+	@Override
+	public int getWidth() {
+		return width;
+	}
+	
+	/**
+	 * Works through the columns of dictX a tile at a time
+	 */
+	@Override
+	double searchMaxAbs(OMP2DWorkspace ws, int from, int to, int[] rowAtoms, int[] colAtoms, int index) {
+		final int tiled = atoms - atoms % TILE;
+		double[] dictXT = ws.dictionary.dictXTransposed;
+		double[] temp = ws.temp;
+		
+		double maxAbs = 0;
+		int maxAbsRow = from, maxAbsCol = 0;
+		for(int m = from; m < to; m++) {
+			int row = m*width;
+			int q = 0;
+			for(; q < tiled; q += TILE) {
+				int col0 = q*width, col1 = col0+width, col2 = col1+width, col3 = col2+width;
+				double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+				for(int p = 0; p < width; p++) {
+					double t = temp[row+p];
+					sum0 += t*dictXT[col0+p];
+					sum1 += t*dictXT[col1+p];
+					sum2 += t*dictXT[col2+p];
+					sum3 += t*dictXT[col3+p];
+				}
+				sum0 = Math.abs(sum0);
+				sum1 = Math.abs(sum1);
+				sum2 = Math.abs(sum2);
+				sum3 = Math.abs(sum3);
+				if(sum0 > maxAbs) { maxAbs = sum0; maxAbsRow = m; maxAbsCol = q; }
+				if(sum1 > maxAbs) { maxAbs = sum1; maxAbsRow = m; maxAbsCol = q+1; }
+				if(sum2 > maxAbs) { maxAbs = sum2; maxAbsRow = m; maxAbsCol = q+2; }
+				if(sum3 > maxAbs) { maxAbs = sum3; maxAbsRow = m; maxAbsCol = q+3; }
+			}
+			for(; q < atoms; q++) {
+				double abs = Math.abs(ScalarKernels.INSTANCE.dot(temp, row, dictXT, q*width, width));
+				if(abs > maxAbs) { maxAbs = abs; maxAbsRow = m; maxAbsCol = q; }
+			}
+		}
+		rowAtoms[index] = maxAbsRow;
+		colAtoms[index] = maxAbsCol;
+		return maxAbs;
+	}
+	
+	@Override
+	void kronecker(double[] dict, int colAtom, int rowAtom, double[] atom) {
+		Kernels kernels = Kernels.get();
+		for(int j = 0; j < width; j++) {
+			kernels.scaleInto(dict[colAtom*width + j], dict, rowAtom*width, atom, j*width, width);
+		}
+	}
+}
@@ -0,0 +1,99 @@
+/*
+Copyright (c) 2014 Matthew Simons
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package OMP2D;
+
+/**
+ * Updates the correlations incrementally rather than recalculating them. 
+ * 
+ * Each iteration removes \f$\langle q_k, f \rangle q_k\f$ from the residue, where the 
+ * orthogonal atom \f$q_k = \sum_j t_{kj} a_j\f$ is a combination of the selected atoms. 
+ * As the atoms are separable, the correlation of atom \f$(r, c)\f$ with selected atom 
+ * \f$(r_j, c_j)\f$ is \f$G_y[r][r_j] G_x[c][c_j]\f$, so the correlations can be updated 
+ * in \f$O(k (5N)^2)\f$ operations from the Gram tables of {@link SeparableDictionary} 
+ * instead of two dense products.
+ * 
+ * The update is only cheaper while k is small. Each selected atom costs one rank one 
+ * update of \f$(5N)^2\f$ correlations, while the dense products cost 
+ * \f$5N \cdot N \cdot N + 5N \cdot N \cdot 5N = 30N^3\f$, so they break even at about 
+ * \f$6N/5\f$ selected atoms: 9 for 8x8 blocks, 19 for 16x16 and 38 for 32x32. Past 
+ * that the correlations are calculated densely, as blocks with hundreds of atoms would 
+ * otherwise spend far longer updating them.
+ * 
+ * The initial correlations, and optionally every <code>refreshInterval</code> atoms, 
+ * are calculated densely to bound any drift.
+ */
+public class GramCorrelation implements CorrelationEngine {
+	private final int refreshInterval;
+	
+	/**
+	 * Creates an engine which only calculates the initial correlations densely
+	 */
+	public GramCorrelation() {
+		this(0);
+	}
+	
+	/**
+	 * @param refreshInterval The number of atoms between dense recalculations
+	 * of the correlations, or 0 to never recalculate them
+	 */
+	public GramCorrelation(int refreshInterval) {
+		this.refreshInterval = refreshInterval;
+	}
+
+	@Override
+	public void correlate(OMP2DWorkspace ws, int k) {
+		int previous = ws.correlatedRows;
+		ws.correlatedRows = k;
+		//the number of rank one updates since the last iteration, against the equivalent of the dense products
+		long updates = ((long) k*(k+1) - (long) previous*(previous+1)) / 2;
+		if(k == 0 || (refreshInterval > 0 && k / refreshInterval != previous / refreshInterval) 
+				|| updates > crossover(ws.width)) {
+			DenseCorrelation.INSTANCE.correlate(ws, k);
+			return;
+		}
+		
+		double[] coordinates = ws.getCoordinates();
+		for(int n = previous; n < k; n++) {
+			double projection = ws.projections[n];
+			for(int j = 0; j <= n; j++) {
+				double weight = projection*coordinates[n*ws.capacity + j];
+				ws.dictionary.subtractCorrelations(ws.innerProducts, ws.rowAtoms[j], ws.colAtoms[j], weight);
+			}
+		}
+	}
+
+	/**
+	 * @param width The width of the blocks
+	 * @return The number of rank one updates which cost as much as the dense products
+	 */
+	static int crossover(int width) {
+		return 6*width / 5;
+	}
+
+	@Override
+	public int coordinateRows(int width) {
+		//an update reading row n makes at least n+1 rank one updates, so rows from the 
+		//crossover on are only ever reached once the correlations are calculated densely
+		return crossover(width);
+	}
+}
@@ -0,0 +1,153 @@
+/*
+Copyright (c) 2014 Matthew Simons
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package OMP2D;
+
+/**
+ * The vector kernels behind the hot loops of the solvers: inner products, scaled 
+ * additions and copies, and searches for the largest absolute value.
+ * 
+ * {@link #get()} returns <code>VectorKernels</code>, written with the incubating Vector 
+ * API, when the <code>jdk.incubator.vector</code> module has been added to the JVM 
+ * (<code>--add-modules jdk.incubator.vector</code>), and {@link ScalarKernels} otherwise.
+ * <code>VectorKernels</code> lives in the separate <code>src-vector</code> source folder, 
+ * compiled against these classes with the same option by the <code>compile-vector</code> 
+ * target of <code>build.xml</code>, so the rest of the plugin builds without the module; 
+ * it is loaded by name only if its classes are present.
+ * Setting the system property <code>OMP2D.scalar</code> to true forces the scalar kernels.
+ * The vector kernels reorder the sums of inner products, so results may differ from 
+ * the scalar kernels by rounding.
+ */
+public abstract class Kernels {
+	/**
+	 * Loads the kernels on first use, after {@link ScalarKernels} is initialised
+	 */
+	private static class Holder {
+		static final Kernels INSTANCE = load();
+	}
+	
+	/**
+	 * @return The fastest kernels available to this JVM
+	 */
+	public static Kernels get() {
+		return Holder.INSTANCE;
+	}
+	
+	/**
+	 * @return The vector kernels, or null if the Vector API is not available
+	 */
+	public static Kernels vector() {
+		try {
+			Class.forName("jdk.incubator.vector.DoubleVector");
+			return (Kernels) Class.forName("OMP2D.VectorKernels").getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			//the module has not been added, or the kernels were compiled without it
+			return null;
+		}
+	}
+	
+	private static Kernels load() {
+		Kernels vector = Boolean.getBoolean("OMP2D.scalar") ? null : vector();
+		return vector != null ? vector : ScalarKernels.INSTANCE;
+	}
+	
+	/**
+	 * @param vector1
+	 * @param offset1 The index of the first element of the first vector
+	 * @param vector2
+	 * @param offset2 The index of the first element of the second vector
+	 * @param length The length of the vectors
+	 * @return The inner product of the two vectors
+	 */
+	public abstract double dot(double[] vector1, int offset1, double[] vector2, int offset2, int length);
+	
+	/**
+	 * Calculates the inner product of two vectors and the squared norm of the second 
+	 * while reading each element once. The inner product is summed exactly as 
+	 * {@link #dot(double[], int, double[], int, int)} would.
+	 * @param vector1
+	 * @param offset1 The index of the first element of the first vector
+	 * @param vector2
+	 * @param offset2 The index of the first element of the second vector
+	 * @param length The length of the vectors
+	 * @param result The array to write the inner product to, at index 0, and the squared norm, at index 1
+	 */
+	public abstract void dotAndNorm(double[] vector1, int offset1, double[] vector2, int offset2, int length, double[] result);
+	
+	/**
+	 * Adds a multiple of one vector to another, \f$y = y + a x\f$. The vectors may be 
+	 * rows of the same array as long as they do not overlap.
+	 * @param a
+	 * @param x
+	 * @param xOffset The index of the first element of x
+	 * @param y
+	 * @param yOffset The index of the first element of y
+	 * @param length The length of the vectors
+	 */
+	public abstract void axpy(double a, double[] x, int xOffset, double[] y, int yOffset, int length);
+	
+	/**
+	 * Multiplies a vector by a scalar in place
+	 * @param vector
+	 * @param offset The index of the first element
+	 * @param length The length of the vector
+	 * @param factor
+	 */
+	public abstract void scale(double[] vector, int offset, int length, double factor);
+	
+	/**
+	 * Writes a multiple of one vector into another, \f$y = a x\f$
+	 * @param a
+	 * @param x
+	 * @param xOffset The index of the first element of x
+	 * @param y
+	 * @param yOffset The index of the first element of y
+	 * @param length The length of the vectors
+	 */
+	public abstract void scaleInto(double a, double[] x, int xOffset, double[] y, int yOffset, int length);
+	
+	/**
+	 * @param vector
+	 * @param offset The index of the first element
+	 * @param length The length of the vector
+	 * @return The largest absolute value in the vector, or 0 if it is empty
+	 */
+	public abstract double maxAbs(double[] vector, int offset, int length);
+	
+	/**
+	 * Finds the first position of the largest absolute value, as a scan which only moves on
+	 * from the first element when it meets a strictly larger value would
+	 * @param vector
+	 * @param offset The index of the first element
+	 * @param length The length of the vector
+	 * @return The index of the largest absolute value within the vector, i.e. from 0
+	 */
+	public int indexOfMaxAbs(double[] vector, int offset, int length) {
+		double maxAbs = maxAbs(vector, offset, length);
+		for(int i = 0; i < length; i++) {
+			if(Math.abs(vector[offset+i]) == maxAbs) {
+				return i;
+			}
+		}
+		return 0;
+	}
+}
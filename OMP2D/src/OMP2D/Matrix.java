@@ -23,6 +23,7 @@ SOFTWARE.
 package OMP2D;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 public class Matrix 
 {
@@ -77,13 +78,23 @@ public class Matrix
 			throw new BadDimensionsException("Matrices should be the same dimension");
 		}
 		
-		double innerProduct = 0;
-		for (int i = 0; i < matrix1.length; i++) {
-			innerProduct += matrix1[i]*matrix2[i];
-		}
+		double innerProduct = Kernels.get().dot(matrix1, 0, matrix2, 0, matrix1.length);
 		return innerProduct;
 	}
 	
+	/**
+	 * Returns the inner product of two rows stored within flat arrays
+	 * @param matrix1
+	 * @param offset1 The index of the first element of the row in matrix1
+	 * @param matrix2
+	 * @param offset2 The index of the first element of the row in matrix2
+	 * @param length The number of elements in each row
+	 * @return
+	 */
+	public static double innerProduct(double[] matrix1, int offset1, double[] matrix2, int offset2, int length) {
+		return Kernels.get().dot(matrix1, offset1, matrix2, offset2, length);
+	}
+	
 	/**
 	 * Applies the Kronecker product of two vectors
 	 * @param vector1
@@ -92,20 +103,31 @@ public class Matrix
 	 * @throws BadDimensionsException 
 	 */
 	public static double[] kronecker(double[] vector1, double[] vector2) throws BadDimensionsException {
+		double[] result = new double[vector1.length*vector1.length];
+		kronecker(vector1, vector2, result);
+		return result;
+	}
+	
+	/**
+	 * Applies the Kronecker product of two vectors, writing into an existing array
+	 * @param vector1
+	 * @param vector2
+	 * @param result The array of at least size*size elements to be overwritten with the product
+	 * @throws BadDimensionsException 
+	 */
+	public static void kronecker(double[] vector1, double[] vector2, double[] result) throws BadDimensionsException {
 		if(vector1.length != vector2.length) {
 			throw new BadDimensionsException();
 		}
 		int size = vector1.length;
+		if(result.length < size*size) {
+			throw new BadDimensionsException("Result is too small for the product", size*size, result.length);
+		}
 		
-		double[] result = new double[size*size];
-
+		Kernels kernels = Kernels.get();
 		for(int j = 0; j < size; j++) {
-			double scaleFactor = vector1[j];
-			for(int i = 0; i < size; i++) {
-				result[j*size + i] = scaleFactor*vector2[i]; 
-			}
+			kernels.scaleInto(vector1[j], vector2, 0, result, j*size, size);
 		}
-		return result;
 	}
 	
 	/**
@@ -124,165 +146,162 @@ public class Matrix
 			throw new BadDimensionsException("Expected matrices of (m,n)x(n,q)\n" +
 					"Recieved (" + mMax + "," + nMax + ")x(" + pMax + "," + qMax + ")");
 		}
-
-		Matrix result = new Matrix(qMax);
 		
-		for(int m = 0; m < mMax; m++) {
-			double[] m1Row = matrix1.getRow(m); 
-			double[] row = new double[qMax];
-			for(int q = 0; q < qMax; q++) {		
-				double[] m2Col = matrix2.getCol(q);
-				for(int product = 0; product < pMax; product++){
-					//row[q] += matrix1.get(product, m) * matrix2.get(q, product);
-					row[q] += m1Row[product] * m2Col[product];
-				}
-			}
-			result.addRow(row);
-		}
+		Matrix result = new Matrix(qMax, mMax);
+		Gemm.multiply(matrix1.view(), matrix2.view(), result.view());
 		return result;
 	}
 	
 	/**
-	 * Performs the dot product of two matrices 
+	 * Performs the dot product of two matrices, writing into an existing view
 	 * @param matrix1 A matrix defined as \f$M^{x \times y}\f$
 	 * @param matrix2 A matrix defined as \f$N^{y \times z}\f$
-	 * @return The resulting matrix
+	 * @param result A view of x by z elements to be overwritten with the product
 	 * @throws BadDimensionsException
 	 */
-	public static Matrix multiply2(Matrix matrix1, Matrix matrix2) throws BadDimensionsException{
-		//matrix1[m][n] matrix2[p][q]
-		int mMax = matrix1.getHeight(); int nMax = matrix1.getWidth();
-		int pMax = matrix2.getHeight(); int qMax = matrix2.getWidth();
-		
-		if(nMax != pMax) {
-			throw new BadDimensionsException("Expected matrices of (m,n)x(n,q)\n" +
-					"Recieved (" + mMax + "," + nMax + ")x(" + pMax + "," + qMax + ")");
-		}
-		
-		double[] m1 = matrix1.to1DArray(); double[] m2 = matrix2.to1DArray();
-
-		Matrix result = new Matrix(qMax);
-		
-		for(int m = 0; m < mMax; m++) {
-			double[] row = new double[qMax];
-			for(int q = 0; q < qMax; q++) {		
-				for(int product = 0; product < pMax; product++){
-					//row[q] += matrix1.get(product, m) * matrix2.get(q, product);
-					//row[q] += m1Row[product] * m2Col[product];
-					row[q] += m1[m*nMax+product] * m2[product*qMax+q];
-				}
-			}
-			result.addRow(row);
-		}
-
-		return result;
+	public static void multiply(Matrix matrix1, Matrix matrix2, MatrixView result) throws BadDimensionsException{
+		Gemm.multiply(matrix1.view(), matrix2.view(), result);
+	}
+	
+	public static double[] transpose(double[] matrix, int height, int width) {
+		double[] newMatrix = new double[matrix.length];
+		transpose(matrix, height, width, newMatrix);
+		return newMatrix;
 	}
 	
 	/**
-	 * Performs the dot product of two matrices 
-	 * @param matrix1 A matrix defined as \f$M^{x \times y}\f$
-	 * @param matrix2 A matrix defined as \f$N^{y \times z}\f$
-	 * @return The resulting matrix
-	 * @throws BadDimensionsException
+	 * Transposes a row-major matrix into an existing array
+	 * @param matrix
+	 * @param height
+	 * @param width
+	 * @param result The array of at least height*width elements to hold the width x height transpose
 	 */
-	public static double[] multiply3(Matrix matrix1, Matrix matrix2) throws BadDimensionsException{
-		//matrix1[m][n] matrix2[p][q]
-		int mMax = matrix1.getHeight(); int nMax = matrix1.getWidth();
-		int pMax = matrix2.getHeight(); int qMax = matrix2.getWidth();
-		
-		if(nMax != pMax) {
-			throw new BadDimensionsException("Expected matrices of (m,n)x(n,q)\n" +
-					"Recieved (" + mMax + "," + nMax + ")x(" + pMax + "," + qMax + ")");
-		}
-		
-		double[] m1 = matrix1.to1DArray(); double[] m2 = matrix2.to1DArray();
-
-		double[] result = new double[6400];
-		
-		for(int m = 0; m < mMax; m++) {
-			for(int q = 0; q < qMax; q++) {		
-				for(int product = 0; product < pMax; product++){
-					result[m*80+q] += m1[m*nMax+product] * m2[product*qMax+q];
-				}
+	public static void transpose(double[] matrix, int height, int width, double[] result) {
+		for(int j = 0; j < height; j++) {
+			for(int i = 0; i < width; i++) {
+				result[i*height+j] = matrix[j*width+i];
 			}
 		}
-
-		return result;
 	}
 	
-	public static double[] transpose(double[] matrix, int height, int width) {
-		double[] newMatrix = new double[matrix.length];
-		for(int j = 0; j < height; j++) {
-			for(int i = 0; i < width; i++) {
-				if(width > height) {
-					newMatrix[i*height+j] = matrix[j*width+i];	
-				} else {
-					newMatrix[i*height+j] = matrix[j*width+i];
-				}
-			}
+	/**
+	 * Returns the sum of the squares of every element
+	 * @param matrix
+	 * @return
+	 */
+	public static double getFrobeniusNorm(double[] matrix) {
+		double norm = 0;
+		for(int i = 0; i < matrix.length; i++) {
+			norm += matrix[i]*matrix[i];
 		}
-		return newMatrix;
+		return norm;
 	}
 	
 	public static void scale(double[] vector, double factor) {
-		for(int i = 0; i < vector.length; i++) {
+		Kernels.get().scale(vector, 0, vector.length, factor);
+	}
+	
+	public static void scale(double[] vector, int offset, int length, double factor) {
+		Kernels.get().scale(vector, offset, length, factor);
+	}
+	
+	public static void scale(float[] vector, int offset, int length, float factor) {
+		for(int i = offset; i < offset+length; i++) {
 			vector[i] *= factor;
 		}
 	}
 	
-	protected ArrayList<double[]> matrix;
+	/**
+	 * Calculates the inner product of two vectors stored within flat arrays, in single precision
+	 * @param matrix1
+	 * @param offset1 The index of the first element of the first vector
+	 * @param matrix2
+	 * @param offset2 The index of the first element of the second vector
+	 * @param length The length of the vectors
+	 * @return
+	 */
+	public static float innerProduct(float[] matrix1, int offset1, float[] matrix2, int offset2, int length) {
+		float innerProduct = 0;
+		for (int i = 0; i < length; i++) {
+			innerProduct += matrix1[offset1+i]*matrix2[offset2+i];
+		}
+		return innerProduct;
+	}
+	
+	/**
+	 * Calculates the inner product of two vectors stored within flat arrays in single 
+	 * precision, using Kahan summation to carry the rounding error of each addition
+	 * @param matrix1
+	 * @param offset1 The index of the first element of the first vector
+	 * @param matrix2
+	 * @param offset2 The index of the first element of the second vector
+	 * @param length The length of the vectors
+	 * @return
+	 */
+	public static float compensatedInnerProduct(float[] matrix1, int offset1, float[] matrix2, int offset2, int length) {
+		float innerProduct = 0, compensation = 0;
+		for (int i = 0; i < length; i++) {
+			float term = matrix1[offset1+i]*matrix2[offset2+i] - compensation;
+			float sum = innerProduct + term;
+			compensation = (sum - innerProduct) - term;
+			innerProduct = sum;
+		}
+		return innerProduct;
+	}
+	
+	/**
+	 * Returns the sum of the squares of every element, accumulated in double precision
+	 * @param matrix
+	 * @return
+	 */
+	public static double getFrobeniusNorm(float[] matrix) {
+		double norm = 0;
+		for(int i = 0; i < matrix.length; i++) {
+			norm += (double) matrix[i]*matrix[i];
+		}
+		return norm;
+	}
+	
+	/**
+	 * The rows stored one after another, with room for further rows at the end
+	 */
+	protected double[] matrix;
 	
 	protected int width, height;
 	
+	/**
+	 * The number of elements in each stored row, which a transpose leaves unchanged
+	 */
+	protected int stride;
+	
 	protected boolean transposed = false;
 	
 	protected double maxAbs;
 	protected int maxAbsRow, maxAbsCol;
 	
 	public Matrix(int width, double[]... vals) {
-		matrix = new ArrayList<double[]>();
-		this.width = width;
-		
-		for(double[] array : vals) {
-			for(int index = 0; index < array.length; index += width) {
-				double[] row = new double[width];
-				try {
-					System.arraycopy(array, index, row, 0, width);
-				} catch(IndexOutOfBoundsException e) {
-					addPadding(array, index, row);
-				}
-				matrix.add(row);
-			}
-		}
-		
-		height = matrix.size();
+		this(width, 0, vals);
 	}
 	
+	/**
+	 * @param width
+	 * @param max The number of rows to reserve room for
+	 * @param vals Arrays to split into rows of the given width, padding the last row of each with zeros
+	 */
 	public Matrix(int width, int max, double[]... vals) {
-		matrix = new ArrayList<double[]>(max);
 		this.width = width;
+		this.stride = width;
 		
+		int rows = 0;
 		for(double[] array : vals) {
-			for(int index = 0; index < array.length; index += width) {
-				double[] row = new double[width];
-				try {
-					System.arraycopy(array, index, row, 0, width);
-				} catch(IndexOutOfBoundsException e) {
-					addPadding(array, index, row);
-				}
-				matrix.add(row);
-			}
+			rows += (array.length + width - 1) / width;
 		}
+		matrix = new double[Math.max(rows, max)*width];
 		
-		height = matrix.size();
-	}
-	
-	private void addPadding(double[] array, int startPos, double[] row) {
-		for(int i = 0; i < row.length; i++) {
-			if(startPos + i < array.length) {
-				row[i] = array[startPos + i];
-			} else {
-				row[i] = 0;
+		for(double[] array : vals) {
+			for(int index = 0; index < array.length; index += width) {
+				System.arraycopy(array, index, matrix, height*width, Math.min(width, array.length - index));
+				height++;
 			}
 		}
 	}
@@ -290,26 +309,47 @@ public class Matrix
 	public Matrix(int width, int height) {
 		this.width = width;
 		this.height = height;
-		for(int i = 0; i < height; i++) {
-			matrix.add(new double[width]);
+		this.stride = width;
+		matrix = new double[height*width];
+	}
+	
+	/**
+	 * Makes room for at least the given number of rows, growing the storage geometrically
+	 * so that repeatedly adding rows takes amortised constant time
+	 * @param rows
+	 */
+	public void ensureCapacity(int rows) {
+		if(rows*stride > matrix.length) {
+			int capacity = Math.max(rows, 3*(matrix.length/Math.max(stride, 1))/2 + 1);
+			matrix = Arrays.copyOf(matrix, capacity*stride);
 		}
 	}
 	
 	public void add(Matrix m) {
-		for(int j = 0; j < m.getHeight(); j++) {
-			double[] row = matrix.get(j);
-			for(int i = 0; i < m.getWidth(); i++) {
-				row[i] += m.get(i, j);
-			}
+		try {
+			view().subBlock(0, 0, m.getWidth(), m.getHeight()).add(m.view());
+		} catch (BadDimensionsException e) {
+			throw new IllegalArgumentException(e);
 		}
 	}
 	
+	/**
+	 * Appends a copy of a row, truncated or padded with zeros to the row length
+	 * @param row
+	 */
 	public void addRow(double[] row) {
-		matrix.add(row);
+		ensureCapacity(height+1);
+		int offset = height*stride;
+		int length = Math.min(row.length, stride);
+		System.arraycopy(row, 0, matrix, offset, length);
+		Arrays.fill(matrix, offset+length, offset+stride, 0);
 		height++;
 	}
 	
 	public double get(int i) {
+		if(!transposed) {
+			return matrix[i];
+		}
 		int y = i / width;
 		int x = i % width;
 		return get(x, y);
@@ -317,23 +357,33 @@ public class Matrix
 	
 	public double get(int x, int y) {
 		if(!transposed) {
-			return matrix.get(y)[x];
+			return matrix[y*stride + x];
 		} else {
-			return matrix.get(x)[y];
+			return matrix[x*stride + y];
 		}
-
 	}
 	
 	public double[] getCol(int c) {
 		double[] col = new double[height];
 		for(int i = 0; i < height; i++) {
-			col[i] = matrix.get(i)[c];
+			col[i] = matrix[i*stride + c];
 		}
 		
 		return col;
 	}
 	
+	/**
+	 * @return The array holding the stored rows, which the row at {@link #rowView(int)} 
+	 * indexes into. It is replaced when adding a row needs more room.
+	 */
+	public double[] getData() {
+		return matrix;
+	}
+	
 	public double getFrobeniusNorm() {
+		if(!transposed) {
+			return Kernels.get().dot(matrix, 0, matrix, 0, getSize());
+		}
 		double norm = 0;
 		for(int i = 0; i < this.getSize(); i++) {
 			norm += this.get(i)*this.get(i);
@@ -345,8 +395,15 @@ public class Matrix
 		return height;
 	}
 	
+	/**
+	 * @return A copy of each stored row
+	 */
 	public ArrayList<double[]> getMatrixValues() {
-		return matrix;
+		ArrayList<double[]> rows = new ArrayList<double[]>(height);
+		for(int j = 0; j < height; j++) {
+			rows.add(getRow(j));
+		}
+		return rows;
 	}
 	
 	public double getMaxAbs() {
@@ -376,16 +433,16 @@ public class Matrix
 	 * @throws BadDimensionsException
 	 */
 	public double getRowNorm(int rowIndex) throws BadDimensionsException{
-		double innerProduct = 0;
-		double[] row = matrix.get(rowIndex);
-		for(int i = 0; i < row.length; i++) {
-			innerProduct += row[i]*row[i];
-		}
-		return Math.sqrt(innerProduct);
+		int row = rowView(rowIndex);
+		return Math.sqrt(innerProduct(matrix, row, matrix, row, stride));
 	}
 	
+	/**
+	 * @param r
+	 * @return A copy of a stored row
+	 */
 	public double[] getRow(int r) {
-		return matrix.get(r);
+		return Arrays.copyOfRange(matrix, r*stride, (r+1)*stride);
 	}
 	
 	public int getSize() {
@@ -394,10 +451,8 @@ public class Matrix
 	
 	public double getSum() {
 		double sum = 0;
-		for(double[] row : matrix) {
-			for(double d: row) {
-				sum += d;
-			}
+		for(int i = 0; i < getSize(); i++) {
+			sum += matrix[i];
 		}
 		return sum;
 	}
@@ -408,9 +463,7 @@ public class Matrix
 	
 	/**
 	 * Multiplies this matrix with another. Performs the dot product of two matrices
-	 * @param matrix1 A matrix defined as \f$M^{x \times y}\f$
-	 * @param matrix2 A matrix defined as \f$N^{y \times z}\f$
-	 * @return The resulting matrix
+	 * @param matrix A matrix defined as \f$N^{y \times z}\f$
 	 * @throws BadDimensionsException
 	 */
 	public void multiply(Matrix matrix) throws BadDimensionsException{
@@ -422,44 +475,49 @@ public class Matrix
 			throw new BadDimensionsException("Expected matrices of (m,n)x(n,q)\n" +
 					"Recieved (" + mMax + "," + nMax + ")x(" + pMax + "," + qMax + ")");
 		}
-
-		//Matrix replacement = new Matrix(qMax);
-		ArrayList<double[]> replacement = new ArrayList<double[]>();
 		
-		for(int m = 0; m < mMax; m++) {
-			double[] row = new double[qMax];
-			for(int q = 0; q < qMax; q++) {			
-				for(int product = 0; product < pMax; product++){
-					row[q] += this.get(product, m) * matrix.get(q, product);
-				}
-			}
-			replacement.add(row);
-			//replacement.addRow(row);
-		}
-		this.matrix = replacement;
+		double[] result = new double[mMax*qMax];
+		Gemm.multiply(this.view(), matrix.view(), MatrixView.of(result, qMax, mMax));
+		this.matrix = result;
 		this.width = qMax;
-		this.height = pMax;
+		this.stride = qMax;
+		this.height = mMax;
+		this.transposed = false;
 	}
 
 	public double normalizeRow(int rowIndex) throws BadDimensionsException{
 		double rowNorm = getRowNorm(rowIndex);
-		double[] row = matrix.get(rowIndex);
-		for(int i = 0; i < width; i++) {
-			row[i] /= rowNorm;
+		int row = rowView(rowIndex);
+		for(int i = 0; i < stride; i++) {
+			matrix[row+i] /= rowNorm;
 		}
 		return rowNorm;
 	}
 	
+	/**
+	 * @return A view of this matrix as seen through {@link #get(int, int)}, over the same storage
+	 */
+	public MatrixView view() {
+		if(!transposed) {
+			return new MatrixView(matrix, 0, width, height, stride, 1);
+		}
+		return new MatrixView(matrix, 0, width, height, 1, stride);
+	}
+	
+	/**
+	 * @param r
+	 * @return The index of the first element of a stored row within {@link #getData()}
+	 */
+	public int rowView(int r) {
+		return r*stride;
+	}
+	
 	/**
 	 * Scales the matrix by a given factor
 	 * @param factor
 	 */
 	public void scale(double factor) {
-		for(double[] row : matrix) {
-			for(int i = 0; i < width; i++) {
-				row[i] *= factor;
-			}
-		}
+		scale(matrix, 0, getSize(), factor);
 	}
 	
 	public void set(int i, double value) {
@@ -469,42 +527,42 @@ public class Matrix
 	}
 	
 	public void set(int x, int y, double value) {
-		matrix.get(y)[x] = value;
+		if(!transposed) {
+			matrix[y*stride + x] = value;
+		} else {
+			matrix[x*stride + y] = value;
+		}
 	}
 	
 	public void subtract(Matrix m) {
-		for(int j = 0; j < m.getHeight(); j++) {
-			double[] row = matrix.get(j);
-			for(int i = 0; i < m.getWidth(); i++) {
-				row[i] -= m.get(i, j);
-			}
+		try {
+			view().subBlock(0, 0, m.getWidth(), m.getHeight()).subtract(m.view());
+		} catch (BadDimensionsException e) {
+			throw new IllegalArgumentException(e);
 		}
 	}
 	
 	public void subtract(BasicMatrix m) {
-		for(int j = 0; j < m.getHeight(); j++) {
-			double[] row = matrix.get(j);
-			for(int i = 0; i < m.getWidth(); i++) {
-				row[i] -= m.get(i, j);
-			}
+		try {
+			view().subBlock(0, 0, m.getWidth(), m.getHeight()).subtract(m.view());
+		} catch (BadDimensionsException e) {
+			throw new IllegalArgumentException(e);
 		}
 	}
 	
 	public void subtract(double[] m, double scalar) {
-		for(int j = 0; j < this.getHeight(); j++) {
-			double[] row = matrix.get(j);
-			for(int i = 0; i < this.getWidth(); i++) {
-				row[i] -= m[j*width+i]*scalar;
-			}
+		try {
+			view().addScaled(-scalar, MatrixView.of(m, width, height));
+		} catch (BadDimensionsException e) {
+			throw new IllegalArgumentException(e);
 		}
 	}
 	
+	/**
+	 * @return A copy of the stored rows, one after another
+	 */
 	public double[] to1DArray() {
-		double[] array = new double[height*width];
-		for(int j = 0; j < height; j++) {
-			System.arraycopy(matrix.get(j), 0, array, j*width, width);
-		}
-		return array;
+		return Arrays.copyOf(matrix, getSize());
 	}
 	
 	public void transpose() {
@@ -519,9 +577,9 @@ public class Matrix
 	 */
 	public void updateMaxAbs() {
 		for(int j = 0; j < height; j++) {
-			double[] row = matrix.get(j);
+			int row = j*stride;
 			for(int i = 0; i < width; i++) {
-				double abs = Math.abs(row[i]);
+				double abs = Math.abs(matrix[row+i]);
 				if(abs > maxAbs) {
 					maxAbs = abs;
 					maxAbsRow = j;
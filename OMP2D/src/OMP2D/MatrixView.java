@@ -0,0 +1,249 @@
+/*
+Copyright (c) 2014 Matthew Simons
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package OMP2D;
+
+/**
+ * A rectangular window onto a flat array, addressed by the index of its first element 
+ * and the distances between consecutive rows and consecutive columns. Transposes, 
+ * sub-blocks and single rows or columns are new views over the same array, so none
+ * of them copy any elements, and writes through a view change the underlying array.
+ * 
+ * As in {@link Matrix}, elements are addressed by column x and row y.
+ */
+public class MatrixView {
+	final double[] data;
+	final int offset, width, height, rowStride, colStride;
+	
+	/**
+	 * @param data The backing array
+	 * @param offset The index of the element at (0, 0)
+	 * @param width The number of columns
+	 * @param height The number of rows
+	 * @param rowStride The distance between elements of consecutive rows
+	 * @param colStride The distance between elements of consecutive columns
+	 */
+	public MatrixView(double[] data, int offset, int width, int height, int rowStride, int colStride) {
+		this.data = data;
+		this.offset = offset;
+		this.width = width;
+		this.height = height;
+		this.rowStride = rowStride;
+		this.colStride = colStride;
+	}
+	
+	/**
+	 * @param data
+	 * @param width
+	 * @param height
+	 * @return A view of a whole row-major array
+	 */
+	public static MatrixView of(double[] data, int width, int height) {
+		return new MatrixView(data, 0, width, height, width, 1);
+	}
+	
+	/**
+	 * @return The transpose of this view, over the same elements
+	 */
+	public MatrixView transpose() {
+		return new MatrixView(data, offset, height, width, colStride, rowStride);
+	}
+	
+	/**
+	 * @param x The first column
+	 * @param y The first row
+	 * @param width
+	 * @param height
+	 * @return The view of a block within this view
+	 * @throws BadDimensionsException If the block does not lie within this view
+	 */
+	public MatrixView subBlock(int x, int y, int width, int height) throws BadDimensionsException {
+		if(x < 0 || y < 0 || width < 0 || height < 0 || x + width > this.width || y + height > this.height) {
+			throw new BadDimensionsException("Block (" + x + "," + y + ")+(" + width + "," + height + 
+					") lies outside a view of (" + this.width + "," + this.height + ")");
+		}
+		return new MatrixView(data, index(x, y), width, height, rowStride, colStride);
+	}
+	
+	/**
+	 * @param y
+	 * @return The 1 x width view of a row
+	 * @throws BadDimensionsException
+	 */
+	public MatrixView row(int y) throws BadDimensionsException {
+		return subBlock(0, y, width, 1);
+	}
+	
+	/**
+	 * @param x
+	 * @return The height x 1 view of a column
+	 * @throws BadDimensionsException
+	 */
+	public MatrixView col(int x) throws BadDimensionsException {
+		return subBlock(x, 0, 1, height);
+	}
+	
+	public double[] getData() {
+		return data;
+	}
+	
+	public int getOffset() {
+		return offset;
+	}
+	
+	public int getWidth() {
+		return width;
+	}
+	
+	public int getHeight() {
+		return height;
+	}
+	
+	public int getRowStride() {
+		return rowStride;
+	}
+	
+	public int getColStride() {
+		return colStride;
+	}
+	
+	public int getSize() {
+		return width*height;
+	}
+	
+	/**
+	 * @param x
+	 * @param y
+	 * @return The index of an element within the backing array
+	 */
+	public int index(int x, int y) {
+		return offset + y*rowStride + x*colStride;
+	}
+	
+	public double get(int x, int y) {
+		return data[offset + y*rowStride + x*colStride];
+	}
+	
+	public void set(int x, int y, double value) {
+		data[offset + y*rowStride + x*colStride] = value;
+	}
+	
+	/**
+	 * @return Whether the elements of each row are adjacent in the backing array
+	 */
+	public boolean hasContiguousRows() {
+		return colStride == 1;
+	}
+	
+	private void checkSameShape(MatrixView view) throws BadDimensionsException {
+		if(view.width != width || view.height != height) {
+			throw new BadDimensionsException("Expected views of (" + width + "," + height + 
+					") Recieved (" + view.width + "," + view.height + ")");
+		}
+	}
+	
+	/**
+	 * @param view A view of the same shape
+	 * @return The sum of the products of corresponding elements, taken row by row
+	 * @throws BadDimensionsException
+	 */
+	public double innerProduct(MatrixView view) throws BadDimensionsException {
+		checkSameShape(view);
+		double innerProduct = 0;
+		if(hasContiguousRows() && view.hasContiguousRows()) {
+			Kernels kernels = Kernels.get();
+			for(int y = 0; y < height; y++) {
+				innerProduct += kernels.dot(data, offset + y*rowStride, view.data, view.offset + y*view.rowStride, width);
+			}
+			return innerProduct;
+		}
+		for(int y = 0; y < height; y++) {
+			for(int x = 0; x < width; x++) {
+				innerProduct += get(x, y)*view.get(x, y);
+			}
+		}
+		return innerProduct;
+	}
+	
+	/**
+	 * Adds a multiple of another view to this one
+	 * @param scalar
+	 * @param view A view of the same shape, which must not overlap this one unless it is identical
+	 * @throws BadDimensionsException
+	 */
+	public void addScaled(double scalar, MatrixView view) throws BadDimensionsException {
+		checkSameShape(view);
+		if(hasContiguousRows() && view.hasContiguousRows()) {
+			Kernels kernels = Kernels.get();
+			for(int y = 0; y < height; y++) {
+				kernels.axpy(scalar, view.data, view.offset + y*view.rowStride, data, offset + y*rowStride, width);
+			}
+			return;
+		}
+		for(int y = 0; y < height; y++) {
+			for(int x = 0; x < width; x++) {
+				data[index(x, y)] += scalar*view.get(x, y);
+			}
+		}
+	}
+	
+	public void add(MatrixView view) throws BadDimensionsException {
+		addScaled(1, view);
+	}
+	
+	public void subtract(MatrixView view) throws BadDimensionsException {
+		addScaled(-1, view);
+	}
+	
+	/**
+	 * Overwrites this view with the elements of another
+	 * @param view A view of the same shape, which must not overlap this one
+	 * @throws BadDimensionsException
+	 */
+	public void copyFrom(MatrixView view) throws BadDimensionsException {
+		checkSameShape(view);
+		if(hasContiguousRows() && view.hasContiguousRows()) {
+			for(int y = 0; y < height; y++) {
+				System.arraycopy(view.data, view.offset + y*view.rowStride, data, offset + y*rowStride, width);
+			}
+			return;
+		}
+		for(int y = 0; y < height; y++) {
+			for(int x = 0; x < width; x++) {
+				data[index(x, y)] = view.get(x, y);
+			}
+		}
+	}
+	
+	/**
+	 * @return A row-major copy of the elements
+	 */
+	public double[] toArray() {
+		double[] array = new double[getSize()];
+		try {
+			of(array, width, height).copyFrom(this);
+		} catch (BadDimensionsException e) {
+			throw new IllegalStateException(e);
+		}
+		return array;
+	}
+}
@@ -0,0 +1,132 @@
+/*
+Copyright (c) 2014 Matthew Simons
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package OMP2D;
+
+/**
+ * Searches for the largest correlation in single precision, while the solver keeps 
+ * its residue, orthogonalization and coefficients in double precision.
+ * 
+ * Every single precision correlation lies within \f$(2N+2) u \|R\|_F\f$ of its double 
+ * precision value, where u is the unit roundoff of a float, since the atoms have unit 
+ * norm. Each candidate whose float correlation is within twice that bound of the 
+ * largest is rescored exactly as {@link DenseCorrelation} would, in the same order, 
+ * so the chosen atom matches the double precision search. If there are too many 
+ * candidates the search falls back to {@link DenseCorrelation} altogether.
+ */
+public class MixedPrecisionCorrelation implements FusedCorrelationEngine {
+	public static final MixedPrecisionCorrelation INSTANCE = new MixedPrecisionCorrelation();
+	
+	/** The unit roundoff of single precision, 2^-24 */
+	private static final double UNIT_ROUNDOFF = 0x1p-24;
+	
+	/**
+	 * Calculates the correlations in single precision, without rescoring any of them
+	 */
+	@Override
+	public void correlate(OMP2DWorkspace ws, int k) {
+		FloatWorkspace fw = ws.getFloatWorkspace();
+		roundResidue(ws, fw);
+		FloatCorrelation.correlate(fw);
+		float[] innerProducts = fw.getInnerProducts();
+		for(int i = 0; i < innerProducts.length; i++) {
+			ws.innerProducts[i] = innerProducts[i];
+		}
+	}
+
+	@Override
+	public double correlateMaxAbs(OMP2DWorkspace ws, int k) {
+		final int atoms = ws.atoms;
+		FloatWorkspace fw = ws.getFloatWorkspace();
+		double residueNorm = Math.sqrt(roundResidue(ws, fw));
+		
+		//gather the near ties in the order the dense search would meet them
+		float margin = (float) (2*(2*ws.width + 2)*UNIT_ROUNDOFF*residueNorm);
+		int[] candidates = ws.getCandidates();
+		int count = FloatCorrelation.correlateNearMax(fw, margin, candidates);
+		if(count < 0) {
+			return DenseCorrelation.INSTANCE.correlateMaxAbs(ws, k);
+		}
+		
+		double maxAbs = 0;
+		int maxAbsPosition = 0;
+		for(int c = 0; c < count; c++) {
+			int position = candidates[c];
+			double abs = Math.abs(rescore(ws, position / atoms, position % atoms));
+			if(abs > maxAbs) {
+				maxAbs = abs;
+				maxAbsPosition = position;
+			}
+		}
+		ws.rowAtoms[k] = maxAbsPosition / atoms;
+		ws.colAtoms[k] = maxAbsPosition % atoms;
+		return maxAbs;
+	}
+	
+	/**
+	 * Rounds the residue to single precision
+	 * @param ws
+	 * @param fw
+	 * @return The energy of the double precision residue
+	 */
+	private static double roundResidue(OMP2DWorkspace ws, FloatWorkspace fw) {
+		double[] residue = ws.residue;
+		double energy = 0;
+		for(int i = 0; i < residue.length; i++) {
+			fw.residue[i] = (float) residue[i];
+			energy += residue[i]*residue[i];
+		}
+		return energy;
+	}
+	
+	/**
+	 * Calculates a single correlation in double precision, with the same operations as 
+	 * {@link DenseCorrelation#correlate(OMP2DWorkspace, int)}
+	 * @param ws
+	 * @param rowAtom
+	 * @param colAtom
+	 * @return The correlation of the residue with the atom
+	 */
+	private static double rescore(OMP2DWorkspace ws, int rowAtom, int colAtom) {
+		final int width = ws.width;
+		double[] dictY = ws.dictionary.dictY;
+		double[] residue = ws.residue;
+		double[] temp = ws.temp;
+		int row = rowAtom*width;
+		for(int q = 0; q < width; q++) {
+			temp[row+q] = 0;
+		}
+		for(int p = 0; p < width; p++) {
+			double y = dictY[row+p];
+			int resRow = p*width;
+			for(int q = 0; q < width; q++) {
+				temp[row+q] += y*residue[resRow+q];
+			}
+		}
+		return ScalarKernels.INSTANCE.dot(temp, row, ws.dictionary.dictXTransposed, colAtom*width, width);
+	}
+
+	@Override
+	public int coordinateRows(int width) {
+		return 0;
+	}
+}
@@ -22,23 +22,28 @@ SOFTWARE.
 
 package OMP2D;
 
-public class OMP2D {
-	private double[] imageData;
-	private Matrix imageBlock, approxBlock;
-	private Matrix imageBlockTransposed;
-	private BasicMatrix residue;
-	private Matrix orthogonal;
-	private BasicMatrix dictX, dictY;
-	private double[] coefficients;
+import java.util.Arrays;
+
+public class OMP2D extends AbstractBlockSolver {
+	private double[] coordinates;
+	private int coordinateRows;
+	private double energy, residualEnergy;
+	private int rows;
+	private int[] selectedRowAtoms, selectedColAtoms;
+	private double reorthogonalizationThreshold = DEFAULT_REORTH_THRESHOLD;
+	private boolean denseOutput = true;
+	private int orthogonalizations, reorthogonalizations;
+	private final double[] dotAndNorm = new double[2];
 	
-	private final double INITIAL_TOL = 1e-10;
-	private final int REORTH_ITERATIONS = 2;
-	private final double TOLERANCE;
-	private final int MAX_ITERATIONS;
-	private final int WIDTH;
-	public final int BLOCK_ID;
+	/**
+	 * The fraction of a row's norm below which a second pass of reorthogonalization is 
+	 * made, \f$1/\sqrt{2}\f$ as suggested by Daniel, Gragg, Kaufman and Stewart
+	 */
+	public static final double DEFAULT_REORTH_THRESHOLD = 1/Math.sqrt(2);
 	
-	private int curRowAtom, curColAtom;
+	private final double DEPENDENCE_TOL = 1e-12;
+	private final int RESYNC_INTERVAL = 32;
+	private final double RESYNC_TOL = 1e-8;
 	
 	/**
 	 * Creates a new OMP2D block processor
@@ -48,12 +53,7 @@ public class OMP2D {
 	 * @param maxIterations The maximum number of iterations to be done without meeting the tolerance level
 	 */
 	public OMP2D(double[] imageData, int width, int id, double tol, int maxIterations) {
-		this.imageData = imageData;
-
-		TOLERANCE = tol;
-		WIDTH = width;
-		MAX_ITERATIONS = maxIterations;
-		BLOCK_ID = id;
+		super(imageData, width, id, tol, maxIterations);
 	}
 	
 	/**
@@ -63,238 +63,514 @@ public class OMP2D {
 	 * @param maxIterations The maximum number of iterations to be done without meeting the tolerance level
 	 */
 	public OMP2D(Matrix imageBlock, int id, double tol, int maxIterations) {
-		this.imageData = imageBlock.to1DArray();
-		this.imageBlock = imageBlock;
-
-		TOLERANCE = tol;
-		WIDTH = imageBlock.getWidth();
-		MAX_ITERATIONS = maxIterations;
-		BLOCK_ID = id;
+		super(imageBlock.to1DArray(), imageBlock.getWidth(), id, tol, maxIterations);
 	}
 	
 	/**
-	 * Initialiser for the matrices of this object.
-	 * @param imageData
-	 * @param width
+	 * Sets how far the norm of a new orthogonal atom must fall during its first pass of 
+	 * reorthogonalization, as a fraction of its norm before the pass, before a second pass 
+	 * is made. Defaults to {@link #DEFAULT_REORTH_THRESHOLD}.
+	 * @param threshold The fraction, where 0 never makes a second pass and 1 always does
 	 */
-	private void setup(double[] imageData, int width) {
-		imageBlock = new Matrix(width, imageData);
-		dictX = new DictionaryX(WIDTH);
-		dictY = new DictionaryY(WIDTH);
-		
-		double[] tData = Matrix.transpose(imageData.clone(), WIDTH, WIDTH);
-		this.imageBlockTransposed = new Matrix(width, tData);
-		this.residue = new BasicMatrix(WIDTH, tData);
+	public void setReorthogonalizationThreshold(double threshold) {
+		this.reorthogonalizationThreshold = threshold;
+	}
+	
+	/**
+	 * Sets whether the approximated block is written out when the block is finished. 
+	 * Without it the block is only kept as its {@link #getSparseCode() sparse code}, and 
+	 * {@link #getApproxData()} reconstructs it from the code when first called.
+	 * Defaults to true.
+	 * @param denseOutput
+	 */
+	public void setDenseOutput(boolean denseOutput) {
+		this.denseOutput = denseOutput;
+	}
+	
+	/**
+	 * @return The number of atoms of the last block which were reorthogonalized
+	 */
+	public int getOrthogonalizations() {
+		return orthogonalizations;
+	}
+	
+	/**
+	 * @return The number of atoms of the last block which needed a second pass of reorthogonalization
+	 */
+	public int getReorthogonalizations() {
+		return reorthogonalizations;
 	}
 	
 	/**
 	 * Calculates the approximated block 
 	 * @throws BadDimensionsException
 	 */
+	@Override
 	public void calcBlock() throws BadDimensionsException {
-		setup(imageData, WIDTH);
+		OMP2DWorkspace ws = getWorkspace();
+		start(ws);
+		while(advance(ws, findAtoms(ws, rows))) {
+		}
+	}
+	
+	/**
+	 * Loads the block into a workspace ready for its first iteration
+	 * @param ws
+	 * @throws BadDimensionsException
+	 */
+	void start(OMP2DWorkspace ws) throws BadDimensionsException {
+		ws.reset(imageData);
 		
-		//First iteration
-		double acceptance = findNextAtom();
+		//only the rows the engine reads are kept up, as each costs O(k^2)
+		coordinateRows = engine.coordinateRows(WIDTH);
+		coordinates = coordinateRows > 0 ? ws.getCoordinates() : null;
 		
-		if(acceptance < INITIAL_TOL) { 
+		//the residual energy falls by the square of each projection onto the orthonormal 
+		//atoms, and is recalculated every RESYNC_INTERVAL atoms to bound any drift
+		energy = Matrix.getFrobeniusNorm(ws.residue);
+		residualEnergy = energy;
+		rows = 0;
+		selectedRowAtoms = selectedColAtoms = null;
+		orthogonalizations = reorthogonalizations = 0;
+		startBlock(ws, energy);
+	}
+	
+	/**
+	 * Adds the atoms selected for this iteration and projects them out of the residue. 
+	 * The results are recorded once the block is finished.
+	 * @param ws
+	 * @param found The number of atoms selected from index {@link #getRows()}
+	 * @return False once the block is finished
+	 * @throws BadDimensionsException
+	 */
+	boolean advance(OMP2DWorkspace ws, int found) throws BadDimensionsException {
+		if(found == 0) { 
 			//no improvements to be made
-			approxBlock = imageBlock;
-			coefficients = new double[0];
-			return;
+			noImprovement();
+			selectedRowAtoms = selectedColAtoms = new int[0];
+			return false;
 		}
 		
-		//double[] chosenAtom = Matrix.kronecker(dictX.getCol(curColAtom), dictY.getRow(curRowAtom));//They are the same but transposed, use more efficient getrow
-		double[] chosenAtom = BasicMatrix.kronecker(dictY, dictY, curColAtom, curRowAtom);
-		orthogonal = new Matrix(chosenAtom.length, chosenAtom.clone());
-		Matrix beta = new Matrix(chosenAtom.length, chosenAtom.clone());
-
-		double rowNorm = orthogonal.normalizeRow(0); 
-		beta.scale(1/rowNorm);
-		updateResidual(orthogonal.getRow(orthogonal.getHeight()-1));
-		acceptance = residue.getFrobeniusNorm() / (WIDTH*WIDTH);
-
-		if(acceptance < TOLERANCE) {
-			processResults(beta);
-			return;
+		int added = 0;
+		for(int s = 0; s < found; s++) {
+			moveSelection(ws, rows+s, rows+added);
+			if(addAtom(ws, rows+added)) {
+				added++;
+			}
+		}
+		if(added == 0) {
+			//the atoms are already spanned by those selected
+			termination = Termination.DEPENDENT_ATOMS;
+			processResults(ws, rows);
+			return false;
 		}
 		
-		for(int k = 1; k < MAX_ITERATIONS; k++) {
-			findNextAtom();
-			//chosenAtom = Matrix.kronecker(dictX.getCol(curColAtom), dictY.getRow(curRowAtom));
-			chosenAtom = BasicMatrix.kronecker(dictY, dictY, curColAtom, curRowAtom);
-			
-			orthogonalize(chosenAtom.clone());
-			reorthogonalize(REORTH_ITERATIONS); 
-			
-			rowNorm = orthogonal.normalizeRow(k); 
-
-			double[] orthK = orthogonal.getRow(k-1).clone(); //need copy not actual
-			getBiorthogonal(beta, chosenAtom, orthK, rowNorm);
-			Matrix.scale(orthK, 1/rowNorm);
-			beta.addRow(orthK);
-
-			updateResidual(orthogonal.getRow(k));
-			acceptance = residue.getFrobeniusNorm() / (WIDTH*WIDTH);
-
-			if(acceptance < TOLERANCE) {
-				break;
+		for(int k = rows; k < rows+added; k++) {
+			updateResidual(ws, k);
+			residualEnergy -= ws.projections[k]*ws.projections[k];
+			recordEnergy(ws, k+1, residualEnergy);
+		}
+		if(debug) {
+			checkResidualEnergy(ws, residualEnergy, energy);
+		}
+		if(rows / RESYNC_INTERVAL != (rows+added) / RESYNC_INTERVAL) {
+			residualEnergy = Matrix.getFrobeniusNorm(ws.residue);
+		}
+		rows += added;
+		
+		if(isFinished(ws, rows, residualEnergy)) {
+			processResults(ws, rows);
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Gets the coefficients of the selected atoms. If only the approximation was 
+	 * calculated they are found on the first call, by solving the normal equations 
+	 * of the selected atoms with the block.
+	 */
+	@Override
+	public double[] getCoefficients() {
+		if(coefficients == null && selectedRowAtoms != null) {
+			try {
+				coefficients = leastSquares(DictionaryRegistry.get(WIDTH), imageData, selectedRowAtoms, selectedColAtoms);
+			} catch(BadDimensionsException e) {
+				throw new IllegalStateException(e);
 			}
 		}
-		processResults(beta);
+		return coefficients;
 	}
 	
 	/**
-	 * Finds the approximated block and its coefficients
-	 * @param beta
-	 * @throws BadDimensionsException
+	 * @return The atoms and coefficients approximating the block, or null if it has not been calculated
 	 */
-	private void processResults(Matrix beta) throws BadDimensionsException {
-		coefficients = new double[beta.getHeight()];
-		double[] ibt = imageBlockTransposed.to1DArray();
-		for(int j = 0; j < beta.getHeight(); j++) {
-			coefficients[j] = Matrix.innerProduct(beta.getRow(j), ibt);
+	public SparseBlockCode getSparseCode() {
+		if(selectedRowAtoms == null) {
+			return null;
 		}
-
-		approxBlock = imageBlockTransposed;
-		approxBlock.subtract(residue);
-		approxBlock = new Matrix(WIDTH, Matrix.transpose(approxBlock.to1DArray(), WIDTH, WIDTH));
+		return SparseBlockCode.of(BLOCK_ID, WIDTH, selectedRowAtoms, selectedColAtoms, getCoefficients());
+	}
+	
+	@Override
+	public double[] getApproxData() {
+		if(approxData == null && selectedRowAtoms != null) {
+			try {
+				approxData = getSparseCode().toDense();
+			} catch(BadDimensionsException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		return approxData;
+	}
+	
+	@Override
+	public double getNumCoefficients() {
+		return coefficients != null ? coefficients.length : selectedRowAtoms.length;
 	}
 	
 	/**
-	 * Selects an Atom from the current dictionary
-	 * @return The maximum absolute value found in the dictionaries given the residue,
-	 *  a.k.a the initial tolerance level
+	 * @return The row atom of each atom selected, in the order they were added
 	 */
-	private double findNextAtom() throws BadDimensionsException{
-		BasicMatrix temp = BasicMatrix.multiply(dictY, residue);
-		BasicMatrix innerProducts = BasicMatrix.multiply(temp, dictX);
-		//Matrix innerProducts = multiplyDictX(temp);
+	public int[] getRowAtoms() {
+		return selectedRowAtoms;
+	}
+	
+	/**
+	 * @return The column atom of each atom selected, in the order they were added
+	 */
+	public int[] getColAtoms() {
+		return selectedColAtoms;
+	}
+	
+	/**
+	 * @return The number of atoms added to the block so far
+	 */
+	int getRows() {
+		return rows;
+	}
+	
+	/**
+	 * Orthogonalizes the k-th selected atom against those before it and, unless only 
+	 * the approximation is wanted, updates the biorthogonal atoms
+	 * @param ws
+	 * @param k
+	 * @return False if the atom is linearly dependent on those already selected
+	 */
+	private boolean addAtom(OMP2DWorkspace ws, int k) {
+		final int size = ws.size;
+		double[] orthogonal = ws.getOrthogonal();
+		kronecker(ws, ws.colAtoms[k], ws.rowAtoms[k]);
 		
-		innerProducts.updateMaxAbs();
-		curRowAtom = innerProducts.getMaxAbsRow();
-		curColAtom = innerProducts.getMaxAbsCol();
+		if(k == 0) {
+			System.arraycopy(ws.atom, 0, orthogonal, 0, size);
+	
+			double rowNorm = normalizeRow(orthogonal, 0, size); 
+			if(coordinates != null) {
+				coordinates[0] = 1/rowNorm;
+			}
+			if(!approximationOnly) {
+				double[] beta = ws.getBeta();
+				System.arraycopy(ws.atom, 0, beta, 0, size);
+				Matrix.scale(beta, 0, size, 1/rowNorm);
+			}
+			return true;
+		}
 		
-		return innerProducts.getMaxAbs();
+		orthogonalize(ws, k);
+		reorthogonalize(ws, k); 
+		
+		double rowNorm = normalizeRow(orthogonal, k*size, size); 
+		if(!(rowNorm > DEPENDENCE_TOL*Math.sqrt(Matrix.innerProduct(ws.atom, 0, ws.atom, 0, size)))) {
+			return false;
+		}
+		if(k < coordinateRows) {
+			Matrix.scale(coordinates, k*ws.capacity, k+1, 1/rowNorm);
+		}
+		if(approximationOnly) {
+			return true;
+		}
+
+		//the new row of beta starts as a copy of the new orthogonal atom
+		double[] beta = ws.getBeta();
+		System.arraycopy(orthogonal, k*size, beta, k*size, size);
+		getBiorthogonal(ws, k, rowNorm);
+		Matrix.scale(beta, k*size, size, 1/rowNorm);
+		return true;
 	}
 	
 	/**
-	 * 
-	 * @return The approximated block calculated
+	 * Finds the approximated block and its coefficients
+	 * @param ws
+	 * @param rows The number of rows in beta
 	 */
-	public Matrix getApproxImage() {
-		return approxBlock;
+	private void processResults(OMP2DWorkspace ws, int rows) throws BadDimensionsException {
+		final int size = ws.size;
+		selectedRowAtoms = Arrays.copyOf(ws.rowAtoms, rows);
+		selectedColAtoms = Arrays.copyOf(ws.colAtoms, rows);
+		if(approximationOnly) {
+			coefficients = null;
+		} else {
+			double[] beta = ws.getBeta();
+			coefficients = new double[rows];
+			for(int j = 0; j < rows; j++) {
+				coefficients[j] = Matrix.innerProduct(beta, j*size, ws.image, 0, size);
+			}
+		}
+
+		approxBlock = null;
+		if(denseOutput) {
+			approxData = new double[size];
+			ws.getApproximation(approxData);
+		} else {
+			approxData = null;
+		}
+	}
+	
+	/**
+	 * Writes the Kronecker product of the chosen atoms into the workspace
+	 * @param ws
+	 * @param colAtom
+	 * @param rowAtom
+	 */
+	private void kronecker(OMP2DWorkspace ws, int colAtom, int rowAtom) {
+		ws.blockKernels.kronecker(ws.dictionary.dictY, colAtom, rowAtom, ws.atom);
 	}
 	
 	/**
 	 * Calculates the biorthogonal for the current iteration
-	 * @param beta
-	 * @param newAtom
-	 * @param orthogonalAtom
+	 * @param ws
+	 * @param k The row of beta holding the orthogonal atom to update against
 	 * @param rowNorm
-	 * @throws BadDimensionsException
 	 */
-	private void getBiorthogonal(Matrix beta, double[] newAtom, double[] orthogonalAtom, double rowNorm) throws BadDimensionsException{
+	private void getBiorthogonal(OMP2DWorkspace ws, int k, double rowNorm) {
+		final int size = ws.size;
+		double[] beta = ws.getBeta();
+		double[] alpha = ws.alpha;
+		int orthogonalAtom = k*size;
+		if(splits(ws, k)) {
+			parallelism.innerProducts(beta, k, size, ws.atom, 0, alpha);
+			Matrix.scale(alpha, 0, k, 1/rowNorm);
+			parallelism.subtractFromRows(beta, k, size, alpha, beta, orthogonalAtom);
+			return;
+		}
 		
-		double[] alpha = new double[beta.getHeight()];
-		for(int j = 0; j < beta.getHeight(); j++) {
-			alpha[j] = Matrix.innerProduct(beta.getRow(j), newAtom);
+		for(int j = 0; j < k; j++) {
+			alpha[j] = Matrix.innerProduct(beta, j*size, ws.atom, 0, size);
 		}
 
-		Matrix.scale(alpha, 1/rowNorm);
+		Matrix.scale(alpha, 0, k, 1/rowNorm);
 
-		for(int j = 0; j < alpha.length; j++) {
-			double[] row = beta.getRow(j); //new bit
-			for(int i = 0; i < beta.getWidth(); i++) {
-				row[i] -= alpha[j]*orthogonalAtom[i];
+		Kernels kernels = Kernels.get();
+		for(int j = 0; j < k; j++) {
+			kernels.axpy(-alpha[j], beta, orthogonalAtom, beta, j*size, size);
+		}
+	}
+	
+	/**
+	 * Finds the residue for the current iteration
+	 * @param ws
+	 * @param row The row of the orthogonal matrix to project out
+	 */
+	private void updateResidual(OMP2DWorkspace ws, int row) {
+		double[] m = ws.getOrthogonal();
+		double[] residue = ws.residue;
+		int offset = row*ws.size;
+		double scalar = Matrix.innerProduct(ws.image, 0, m, offset, ws.size);
+		ws.projections[row] = scalar;
+		for(int j = 0; j < WIDTH; j++) {
+			for(int i = 0; i < WIDTH; i++) {
+				residue[j*WIDTH+i] -= m[offset+i*WIDTH+j]*scalar;
 			}
 		}
 	}
 	
 	/**
-	 * Returns the coefficients used to approximate this block as a Vector
-	 * @return the coefficients
+	 * Compares the tracked residual energy with that of the residue
+	 * @param ws
+	 * @param residualEnergy The tracked residual energy
+	 * @param energy The energy of the block
+	 * @throws IllegalStateException If the two have drifted apart
 	 */
-	public double[] getCoefficients() {
-		return coefficients;
+	private void checkResidualEnergy(OMP2DWorkspace ws, double residualEnergy, double energy) {
+		double actual = Matrix.getFrobeniusNorm(ws.residue);
+		if(Math.abs(actual - residualEnergy) > RESYNC_TOL*energy) {
+			throw new IllegalStateException("Block " + BLOCK_ID + ": tracked residual energy " 
+					+ residualEnergy + " differs from " + actual);
+		}
 	}
 	
 	/**
-	 * 
-	 * @return The number of coefficients used to approximate this block
+	 * Orthogonalizes the orthogonal matrix with respect to the current iteration
+	 * @param ws
+	 * @param k The row of the orthogonal matrix to store the new atom in
 	 */
-	public double getNumCoefficients() {
-		return coefficients.length;
+	private void orthogonalize(OMP2DWorkspace ws, int k) {
+		final int size = ws.size;
+		double[] orthogonal = ws.getOrthogonal();
+		int vector = k*size;
+		System.arraycopy(ws.atom, 0, orthogonal, vector, size);
+		double scalar = Matrix.innerProduct(orthogonal, (k-1)*size, orthogonal, vector, size);
+		
+		if(splits(ws, k)) {
+			Arrays.fill(ws.alpha, 0, k, scalar);
+			parallelism.subtractCombination(orthogonal, k, size, ws.alpha, orthogonal, vector);
+		} else {
+			Kernels kernels = Kernels.get();
+			for(int j = 0; j < k; j++) {
+				kernels.axpy(-scalar, orthogonal, j*size, orthogonal, vector, size);
+			}
+		}
+		
+		if(k < coordinateRows) {
+			int capacity = ws.capacity;
+			Arrays.fill(coordinates, k*capacity, (k+1)*capacity, 0);
+			coordinates[k*capacity + k] = 1;
+			for(int j = 0; j < k; j++) {
+				for(int i = 0; i <= j; i++) {
+					coordinates[k*capacity + i] -= scalar*coordinates[j*capacity + i];
+				}
+			}
+		}
 	}
 	
 	/**
-	 * Calculates and returns the PSNR of this block
-	 * @return PSNR
+	 * Removes what remains of the earlier rows from a row, one row at a time (modified 
+	 * Gram-Schmidt). A second pass is only made when the first removed so much of the row 
+	 * that rounding may have left it short of orthogonal, i.e. when its norm fell below 
+	 * the {@link #setReorthogonalizationThreshold(double) threshold} times the norm before 
+	 * ("twice is enough").
+	 * @param ws
+	 * @param rowId The row of the orthogonal matrix to reorthogonalize
 	 */
-	public double getPSNR() {
-		double[] temp = imageData.clone();
-		double[] approxData = approxBlock.to1DArray();
-		double sum = 0;
-		for(int i = 0; i < imageBlock.getSize(); i++) {
-			temp[i] -= approxData[i];
-			sum += temp[i] * temp[i];
+	private void reorthogonalize(OMP2DWorkspace ws, int rowId) {
+		orthogonalizations++;
+		double remaining = reorthogonalizePass(ws, rowId);
+		if(reorthogonalizationThreshold >= 1 || remaining < reorthogonalizationThreshold*reorthogonalizationThreshold) {
+			reorthogonalizePass(ws, rowId);
+			reorthogonalizations++;
 		}
-		double mse = sum / (WIDTH*WIDTH);
-		return 10*Math.log10((255*255)/mse);
 	}
 	
 	/**
-	 * Finds the residue for the current iteration
-	 * @param m currentRow
-	 * @throws BadDimensionsException
+	 * Makes one pass of reorthogonalization. Large blocks which {@link #splits(OMP2DWorkspace, int) 
+	 * split} their work project onto every earlier row at once instead (classical 
+	 * Gram-Schmidt), which rounds differently.
+	 * 
+	 * The squared norm of the row is found in the same sweep as its first projection, 
+	 * and each projection then removes its square from it, so the norm after the pass 
+	 * needs no sweep of its own.
+	 * @param ws
+	 * @param rowId The row of the orthogonal matrix to reorthogonalize
+	 * @return The squared norm of the row after the pass as a fraction of that before it
 	 */
-	private void updateResidual(double[] m) throws BadDimensionsException {
-		double scalar = Matrix.innerProduct(imageBlock, m);
-		for(int j = 0; j < residue.getHeight(); j++) {
-			//double[] row = residue.getRow(j);
-			for(int i = 0; i < residue.getWidth(); i++) {
-				//row[i] -= m[i*residue.getWidth()+j]*scalar;
-				residue.set(i, j, residue.get(i, j) - m[i*residue.getWidth()+j]*scalar);
+	private double reorthogonalizePass(OMP2DWorkspace ws, int rowId) {
+		final int size = ws.size;
+		double[] orthogonal = ws.getOrthogonal();
+		Kernels kernels = Kernels.get();
+		int lastRow = rowId*size;
+		double norm, removed = 0;
+		if(splits(ws, rowId)) {
+			//the row's inner product with itself comes with the projections
+			double[] scalars = ws.alpha;
+			parallelism.innerProducts(orthogonal, rowId+1, size, orthogonal, lastRow, scalars);
+			norm = scalars[rowId];
+			parallelism.subtractCombination(orthogonal, rowId, size, scalars, orthogonal, lastRow);
+			for(int j = 0; j < rowId; j++) {
+				removed += scalars[j]*scalars[j];
+				if(rowId < coordinateRows) {
+					for(int i = 0; i <= j; i++) {
+						coordinates[rowId*ws.capacity + i] -= scalars[j]*coordinates[j*ws.capacity + i];
+					}
+				}
+			}
+		} else {
+			kernels.dotAndNorm(orthogonal, 0, orthogonal, lastRow, size, dotAndNorm);
+			norm = dotAndNorm[1];
+			for(int j = 0; j < rowId; j++) {
+				int curRow = j*size;
+				double scalar = j == 0 ? dotAndNorm[0] : kernels.dot(orthogonal, curRow, orthogonal, lastRow, size);
+				kernels.axpy(-scalar, orthogonal, curRow, orthogonal, lastRow, size);
+				removed += scalar*scalar;
+				if(rowId < coordinateRows) {
+					for(int i = 0; i <= j; i++) {
+						coordinates[rowId*ws.capacity + i] -= scalar*coordinates[j*ws.capacity + i];
+					}
+				}
 			}
 		}
+		return norm > 0 ? (norm - removed) / norm : 1;
 	}
 	
 	/**
-	 * Orthogonalizes the orthogonal matrix with respect to the current iteration
-	 * @param vector 
-	 * @throws BadDimensionsException
+	 * @param ws
+	 * @param rows The number of rows a loop runs over
+	 * @return Whether a loop over that many rows of the block should be split across the pool
 	 */
-	private void orthogonalize(double[] vector) throws BadDimensionsException{
-		double scalar = Matrix.innerProduct(orthogonal.getRow(orthogonal.getHeight()-1), vector);
+	private boolean splits(OMP2DWorkspace ws, int rows) {
+		return parallelism != null && parallelism.splits((long) rows*ws.size);
+	}
+	
+	/**
+	 * Finds the coefficients of the given Kronecker atoms which best approximate a block, 
+	 * factorising their Gram matrix, taken from the separable Gram tables, as 
+	 * {@link CholeskyOMP2D} does
+	 * @param dictionary
+	 * @param image The block, row by row
+	 * @param rowAtoms
+	 * @param colAtoms
+	 * @return The coefficient of each atom
+	 */
+	static double[] leastSquares(SeparableDictionary dictionary, double[] image, int[] rowAtoms, int[] colAtoms) {
+		final int count = rowAtoms.length;
+		final int width = dictionary.width;
+		final int atoms = dictionary.atoms;
+		double[] dict = dictionary.dictY;
+		double[] cholesky = new double[count*(count+1)/2];
+		double[] x = new double[count];
 		
-		for(int j = 0; j < orthogonal.getHeight(); j++) {
-			double[] row = orthogonal.getRow(j);
-			for(int i = 0; i < row.length; i++) {
-				vector[i] -= scalar*row[i];
+		//forward substitution of the correlations of the block with each atom
+		for(int k = 0; k < count; k++) {
+			int rowK = k*(k+1)/2;
+			for(int j = 0; j < k; j++) {
+				int rowJ = j*(j+1)/2;
+				double gram = dictionary.gramY[rowAtoms[k]*atoms + rowAtoms[j]] * dictionary.gramX[colAtoms[k]*atoms + colAtoms[j]];
+				cholesky[rowK+j] = (gram - Matrix.innerProduct(cholesky, rowK, cholesky, rowJ, j)) / cholesky[rowJ+j];
+			}
+			double norm = dictionary.gramY[rowAtoms[k]*atoms + rowAtoms[k]] * dictionary.gramX[colAtoms[k]*atoms + colAtoms[k]];
+			cholesky[rowK+k] = Math.sqrt(norm - Matrix.innerProduct(cholesky, rowK, cholesky, rowK, k));
+			
+			double correlation = 0;
+			for(int j = 0; j < width; j++) {
+				double rowProduct = Matrix.innerProduct(image, j*width, dict, rowAtoms[k]*width, width);
+				correlation += dict[colAtoms[k]*width + j]*rowProduct;
 			}
+			x[k] = (correlation - Matrix.innerProduct(cholesky, rowK, x, 0, k)) / cholesky[rowK+k];
 		}
-		orthogonal.addRow(vector);
+		
+		//back substitution through the transposed factor
+		for(int i = count-1; i >= 0; i--) {
+			double sum = x[i];
+			for(int j = i+1; j < count; j++) {
+				sum -= cholesky[j*(j+1)/2 + i]*x[j];
+			}
+			x[i] = sum / cholesky[i*(i+1)/2 + i];
+		}
+		return x;
 	}
 	
 	/**
-	 * 
-	 * @param repetitions
-	 * @throws BadDimensionsException
+	 * Normalises a row stored within a flat array
+	 * @param matrix
+	 * @param offset The index of the first element of the row
+	 * @param length The length of the row
+	 * @return The norm of the row before normalisation
 	 */
-	private void reorthogonalize(int repetitions) throws BadDimensionsException{
-		int rowId = orthogonal.getHeight()-1;
-		int width = orthogonal.getWidth();
-		
-		double[] lastRow = orthogonal.getRow(rowId);
-		for(int r = 0; r < repetitions; r++) {
-			for(int j = 0; j < rowId; j++) {
-				double[] curRow = orthogonal.getRow(j);
-				double scalar = Matrix.innerProduct(curRow, lastRow);
-				for(int i = 0; i < width; i++) {
-					lastRow[i] -= scalar*curRow[i];
-					//orthogonal.set(i, rowId, orthogonal.get(i, rowId) - scalar*orthogonal.get(i, j));
-				}
-			}
+	private static double normalizeRow(double[] matrix, int offset, int length) {
+		double rowNorm = Math.sqrt(Matrix.innerProduct(matrix, offset, matrix, offset, length));
+		for(int i = offset; i < offset+length; i++) {
+			matrix[i] /= rowNorm;
 		}
+		return rowNorm;
 	}
 }
@@ -0,0 +1,425 @@
+/*
+Copyright (c) 2014 Matthew Simons
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package OMP2D;
+
+/**
+ * Preallocated buffers used by the block solvers to approximate blocks of a fixed size.
+ * A workspace holds everything needed for up to <code>capacity</code> iterations so
+ * that successive blocks can be processed without allocating new matrices. Buffers
+ * which only some solvers need are allocated the first time they are requested.
+ * 
+ * A workspace is not thread safe; use {@link #forCurrentThread(int, int)} to obtain
+ * one that is owned by the calling thread.
+ */
+public class OMP2DWorkspace {
+	private static final ThreadLocal<OMP2DWorkspace> LOCAL = new ThreadLocal<OMP2DWorkspace>();
+	
+	final int width, size, atoms;
+	final int capacity;
+	
+	final SeparableDictionary dictionary;
+	final BlockKernels blockKernels;
+	
+	final double[] image;
+	final double[] residue;
+	
+	/**
+	 * The image, and the residue seen in the same orientation, since the residue is held transposed
+	 */
+	final MatrixView imageView, residueView;
+	final double[] temp, innerProducts;
+	final double[] atom;
+	final double[] alpha, coefficients;
+	
+	final int[] rowAtoms, colAtoms;
+	final double[] projections;
+	private double[] orthogonal, beta;
+	private double[] coordinates;
+	private double[] cholesky;
+	private double[] initialCorrelations;
+	private double[] rowCombinations, gatheredGram;
+	private int[] rowSlots;
+	private double[] selectionValues;
+	private int[] selectionPositions;
+	private DictionaryTransform transform;
+	private double[] correlationRows;
+	private double[] energies;
+	private FloatWorkspace floatWorkspace;
+	private int[] candidates;
+	private double[] searchMaxAbs;
+	private int[] searchRowAtoms, searchColAtoms, searchPositions;
+	
+	int correlatedRows;
+	
+	/**
+	 * Creates a new workspace
+	 * @param width The width and height of the blocks to be processed
+	 * @param capacity The maximum number of iterations a block may take
+	 * @throws BadDimensionsException If no dictionary exists for the block size
+	 */
+	public OMP2DWorkspace(int width, int capacity) throws BadDimensionsException {
+		this(width, capacity, BlockKernels.forWidth(width));
+	}
+	
+	/**
+	 * Creates a new workspace which uses the given kernels, such as {@link BlockKernels#generic(int)}
+	 * in place of those written for the width
+	 * @param width The width and height of the blocks to be processed
+	 * @param capacity The maximum number of iterations a block may take
+	 * @param blockKernels Kernels for blocks of the given width
+	 * @throws BadDimensionsException If no dictionary exists for the block size, or the 
+	 * kernels are for another width
+	 */
+	public OMP2DWorkspace(int width, int capacity, BlockKernels blockKernels) throws BadDimensionsException {
+		if(blockKernels.getWidth() != width) {
+			throw new BadDimensionsException("Kernels for width " + blockKernels.getWidth() + 
+					" cannot process blocks of width " + width);
+		}
+		this.width = width;
+		this.size = width*width;
+		this.atoms = 5*width;
+		this.capacity = capacity;
+		
+		dictionary = DictionaryRegistry.get(width);
+		this.blockKernels = blockKernels;
+		
+		image = new double[size];
+		residue = new double[size];
+		imageView = MatrixView.of(image, width, width);
+		residueView = MatrixView.of(residue, width, width).transpose();
+		temp = new double[atoms*width];
+		innerProducts = new double[atoms*atoms];
+		atom = new double[size];
+		alpha = new double[capacity];
+		coefficients = new double[capacity];
+		
+		rowAtoms = new int[capacity];
+		colAtoms = new int[capacity];
+		projections = new double[capacity];
+	}
+	
+	/**
+	 * Returns the workspace owned by the calling thread, replacing it if it cannot 
+	 * hold blocks of the given size and number of iterations
+	 * @param width The width and height of the blocks to be processed
+	 * @param capacity The maximum number of iterations a block may take
+	 * @return The workspace
+	 * @throws BadDimensionsException If no dictionary exists for the block size
+	 */
+	public static OMP2DWorkspace forCurrentThread(int width, int capacity) throws BadDimensionsException {
+		OMP2DWorkspace workspace = LOCAL.get();
+		if(workspace == null || !workspace.fits(width, capacity)) {
+			workspace = new OMP2DWorkspace(width, capacity);
+			LOCAL.set(workspace);
+		}
+		return workspace;
+	}
+	
+	/**
+	 * @param width The width and height of a block
+	 * @param iterations The maximum number of iterations
+	 * @return Whether this workspace can be used to process the block
+	 */
+	public boolean fits(int width, int iterations) {
+		return this.width == width && capacity >= iterations;
+	}
+	
+	/**
+	 * Loads a new block into the workspace, discarding the state of the previous one
+	 * @param block The intensity values of the block, row by row
+	 * @throws BadDimensionsException
+	 */
+	public void reset(double[] block) throws BadDimensionsException {
+		if(block.length != size) {
+			throw new BadDimensionsException("Block does not match the workspace", size, block.length);
+		}
+		System.arraycopy(block, 0, image, 0, size);
+		resetResidue();
+		correlatedRows = 0;
+	}
+	
+	/**
+	 * Sets the residue back to the image
+	 * @throws BadDimensionsException
+	 */
+	void resetResidue() throws BadDimensionsException {
+		residueView.copyFrom(imageView);
+	}
+	
+	/**
+	 * Finds the largest absolute correlation and records its atoms as the k-th selection
+	 * @param k The number of atoms selected so far
+	 * @return The largest absolute correlation
+	 */
+	public double findMaxAbs(int k) {
+		return findMaxAbs(k, Kernels.get());
+	}
+	
+	/**
+	 * Finds the largest absolute correlation with the given kernels, and records its 
+	 * atoms as the k-th selection
+	 * @param k The number of atoms selected so far
+	 * @param kernels
+	 * @return The largest absolute correlation
+	 */
+	public double findMaxAbs(int k, Kernels kernels) {
+		int position = kernels.indexOfMaxAbs(innerProducts, 0, innerProducts.length);
+		rowAtoms[k] = position / atoms;
+		colAtoms[k] = position % atoms;
+		return Math.abs(innerProducts[position]);
+	}
+	
+	/**
+	 * Writes the approximation of the block, i.e. the block less the residue, row by row
+	 * @param approx The array to write to
+	 * @throws BadDimensionsException
+	 */
+	void getApproximation(double[] approx) throws BadDimensionsException {
+		MatrixView approxView = MatrixView.of(approx, width, width);
+		approxView.copyFrom(imageView);
+		approxView.subtract(residueView);
+	}
+	
+	/**
+	 * @return The orthogonal atoms, one block per row
+	 */
+	double[] getOrthogonal() {
+		if(orthogonal == null) {
+			orthogonal = new double[capacity*size];
+		}
+		return orthogonal;
+	}
+	
+	/**
+	 * @return The biorthogonal atoms, one block per row
+	 */
+	double[] getBeta() {
+		if(beta == null) {
+			beta = new double[capacity*size];
+		}
+		return beta;
+	}
+	
+	/**
+	 * Gets the Cholesky factor of the Gram matrix of the selected atoms. The lower 
+	 * triangle is packed by rows, so row k starts at index k(k+1)/2.
+	 * @return The Cholesky factor
+	 */
+	double[] getCholesky() {
+		if(cholesky == null) {
+			cholesky = new double[capacity*(capacity+1)/2];
+		}
+		return cholesky;
+	}
+	
+	/**
+	 * @return Scratch space for selectors to rank up to <code>capacity</code> correlations
+	 */
+	double[] getSelectionValues() {
+		if(selectionValues == null) {
+			selectionValues = new double[capacity];
+		}
+		return selectionValues;
+	}
+	
+	/**
+	 * @return Scratch space for selectors to hold up to <code>capacity</code> positions
+	 */
+	int[] getSelectionPositions() {
+		if(selectionPositions == null) {
+			selectionPositions = new int[capacity];
+		}
+		return selectionPositions;
+	}
+	
+	/**
+	 * @param ranges The number of ranges a parallel search is split into
+	 * @return Scratch space for the largest correlation of each range
+	 */
+	double[] getSearchMaxAbs(int ranges) {
+		if(searchMaxAbs == null || searchMaxAbs.length < ranges) {
+			searchMaxAbs = new double[ranges];
+		}
+		return searchMaxAbs;
+	}
+	
+	/**
+	 * @param ranges The number of ranges a parallel search is split into
+	 * @return Scratch space for the row atom of the largest correlation of each range
+	 */
+	int[] getSearchRowAtoms(int ranges) {
+		if(searchRowAtoms == null || searchRowAtoms.length < ranges) {
+			searchRowAtoms = new int[ranges];
+		}
+		return searchRowAtoms;
+	}
+	
+	/**
+	 * @param ranges The number of ranges a parallel search is split into
+	 * @return Scratch space for the column atom of the largest correlation of each range
+	 */
+	int[] getSearchColAtoms(int ranges) {
+		if(searchColAtoms == null || searchColAtoms.length < ranges) {
+			searchColAtoms = new int[ranges];
+		}
+		return searchColAtoms;
+	}
+	
+	/**
+	 * @param chunks The number of chunks a parallel search is split into
+	 * @return Scratch space for the position of the largest correlation of each chunk
+	 */
+	int[] getSearchPositions(int chunks) {
+		if(searchPositions == null || searchPositions.length < chunks) {
+			searchPositions = new int[chunks];
+		}
+		return searchPositions;
+	}
+	
+	/**
+	 * @return The fast transform for this workspace's dictionary
+	 */
+	DictionaryTransform getTransform() {
+		if(transform == null) {
+			transform = new DictionaryTransform(dictionary);
+		}
+		return transform;
+	}
+	
+	/**
+	 * @return A buffer for the residual energy after each number of atoms, from 0 to capacity
+	 */
+	double[] getEnergies() {
+		if(energies == null) {
+			energies = new double[capacity+1];
+		}
+		return energies;
+	}
+	
+	/**
+	 * @return The single precision buffers for this workspace's block size and capacity
+	 */
+	FloatWorkspace getFloatWorkspace() {
+		if(floatWorkspace == null) {
+			floatWorkspace = new FloatWorkspace(this);
+		}
+		return floatWorkspace;
+	}
+	
+	/**
+	 * @return Scratch space for up to 5N positions within the correlations
+	 */
+	int[] getCandidates() {
+		if(candidates == null) {
+			candidates = new int[atoms];
+		}
+		return candidates;
+	}
+	
+	/**
+	 * @return A buffer for two rows of correlations
+	 */
+	double[] getCorrelationRows() {
+		if(correlationRows == null) {
+			correlationRows = new double[2*atoms];
+		}
+		return correlationRows;
+	}
+	
+	/**
+	 * @return A 5N x 5N buffer to keep the correlations of the block itself
+	 */
+	double[] getInitialCorrelations() {
+		if(initialCorrelations == null) {
+			initialCorrelations = new double[atoms*atoms];
+		}
+		return initialCorrelations;
+	}
+	
+	/**
+	 * @return A 5N x 5N buffer for the combinations of column Gram rows which share a row atom
+	 */
+	double[] getRowCombinations() {
+		if(rowCombinations == null) {
+			rowCombinations = new double[atoms*atoms];
+		}
+		return rowCombinations;
+	}
+	
+	/**
+	 * @return A 5N x 5N buffer for columns of the row Gram matrix gathered side by side
+	 */
+	double[] getGatheredGram() {
+		if(gatheredGram == null) {
+			gatheredGram = new double[atoms*atoms];
+		}
+		return gatheredGram;
+	}
+	
+	/**
+	 * @return A buffer of 2 x 5N indices: the slot of each row atom, then the row atom in each slot
+	 */
+	int[] getRowSlots() {
+		if(rowSlots == null) {
+			rowSlots = new int[2*atoms];
+		}
+		return rowSlots;
+	}
+	
+	/**
+	 * Gets the lower triangular matrix, with <code>capacity</code> columns, whose row k
+	 * expresses orthogonal atom k as a combination of the atoms selected so far.
+	 * Only as many leading rows as the engine requests are maintained.
+	 * @return The coordinates
+	 */
+	double[] getCoordinates() {
+		if(coordinates == null) {
+			coordinates = new double[capacity*capacity];
+		}
+		return coordinates;
+	}
+	
+	/**
+	 * @param k The index of a selection
+	 * @return The row atom selected at that index
+	 */
+	public int getRowAtom(int k) {
+		return rowAtoms[k];
+	}
+	
+	/**
+	 * @param k The index of a selection
+	 * @return The column atom selected at that index
+	 */
+	public int getColAtom(int k) {
+		return colAtoms[k];
+	}
+	
+	public int getCapacity() {
+		return capacity;
+	}
+	
+	public int getWidth() {
+		return width;
+	}
+}
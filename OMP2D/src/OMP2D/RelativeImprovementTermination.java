@@ -0,0 +1,68 @@
+/*
+Copyright (c) 2014 Matthew Simons
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package OMP2D;
+
+/**
+ * Stops once the atoms of the last iteration reduce the residual energy by less than
+ * a fraction of what remained before them
+ */
+public class RelativeImprovementTermination implements TerminationPolicy {
+	private final double minImprovement;
+	private final int minAtoms;
+	
+	/**
+	 * @param minImprovement The smallest fraction of the residual energy an iteration must remove
+	 */
+	public RelativeImprovementTermination(double minImprovement) {
+		this(minImprovement, 1);
+	}
+	
+	/**
+	 * @param minImprovement The smallest fraction of the residual energy an iteration must remove
+	 * @param minAtoms The number of atoms to select before the rule applies
+	 */
+	public RelativeImprovementTermination(double minImprovement, int minAtoms) {
+		if(minImprovement < 0 || minImprovement >= 1) {
+			throw new IllegalArgumentException("The improvement must be within [0, 1)");
+		}
+		this.minImprovement = minImprovement;
+		this.minAtoms = Math.max(1, minAtoms);
+	}
+
+	@Override
+	public Termination check(double[] energies, int previousAtoms, int atoms, long elapsed) {
+		if(atoms <= minAtoms) {
+			return null;
+		}
+		double previous = energies[previousAtoms];
+		if(previous - energies[atoms] < minImprovement*previous) {
+			return Termination.RELATIVE_IMPROVEMENT;
+		}
+		return null;
+	}
+
+	@Override
+	public int atomLimit() {
+		return Integer.MAX_VALUE;
+	}
+}
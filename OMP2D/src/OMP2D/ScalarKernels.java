@@ -0,0 +1,98 @@
+/*
+Copyright (c) 2014 Matthew Simons
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package OMP2D;
+
+/**
+ * Kernels written as plain loops, summing inner products in order
+ */
+public class ScalarKernels extends Kernels {
+	public static final ScalarKernels INSTANCE = new ScalarKernels();
+	
+	@Override
+	public double dot(double[] vector1, int offset1, double[] vector2, int offset2, int length) {
+		double innerProduct = 0;
+		for (int i = 0; i < length; i++) {
+			innerProduct += vector1[offset1+i]*vector2[offset2+i];
+		}
+		return innerProduct;
+	}
+
+	@Override
+	public void dotAndNorm(double[] vector1, int offset1, double[] vector2, int offset2, int length, double[] result) {
+		double innerProduct = 0, norm = 0;
+		for (int i = 0; i < length; i++) {
+			double element = vector2[offset2+i];
+			innerProduct += vector1[offset1+i]*element;
+			norm += element*element;
+		}
+		result[0] = innerProduct;
+		result[1] = norm;
+	}
+
+	@Override
+	public void axpy(double a, double[] x, int xOffset, double[] y, int yOffset, int length) {
+		for(int i = 0; i < length; i++) {
+			y[yOffset+i] += a*x[xOffset+i];
+		}
+	}
+
+	@Override
+	public void scale(double[] vector, int offset, int length, double factor) {
+		for(int i = offset; i < offset+length; i++) {
+			vector[i] *= factor;
+		}
+	}
+
+	@Override
+	public void scaleInto(double a, double[] x, int xOffset, double[] y, int yOffset, int length) {
+		for(int i = 0; i < length; i++) {
+			y[yOffset+i] = a*x[xOffset+i];
+		}
+	}
+
+	@Override
+	public double maxAbs(double[] vector, int offset, int length) {
+		double maxAbs = 0;
+		for(int i = offset; i < offset+length; i++) {
+			double abs = Math.abs(vector[i]);
+			if(abs > maxAbs) {
+				maxAbs = abs;
+			}
+		}
+		return maxAbs;
+	}
+	
+	@Override
+	public int indexOfMaxAbs(double[] vector, int offset, int length) {
+		double maxAbs = 0;
+		int index = 0;
+		for(int i = 0; i < length; i++) {
+			double abs = Math.abs(vector[offset+i]);
+			if(abs > maxAbs) {
+				maxAbs = abs;
+				index = i;
+			}
+		}
+		return index;
+	}
+}
@@ -0,0 +1,154 @@
+/*
+Copyright (c) 2014 Matthew Simons
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package OMP2D;
+
+/**
+ * An immutable copy of the dictionaries used to approximate blocks of a single size.
+ * Alongside {@link DictionaryX} and {@link DictionaryY} it holds their transposes,
+ * which are the column-major layouts of the originals, so that products against 
+ * either side of the residue can read the dictionaries contiguously.
+ * 
+ * Instances are shared between all solvers and threads through {@link DictionaryRegistry}.
+ */
+public final class SeparableDictionary {
+	final int width, atoms;
+	
+	/** \f$X^{N \times 5N}\f$ stored row by row */
+	final double[] dictX;
+	/** \f$Y^{5N \times N}\f$ stored row by row */
+	final double[] dictY;
+	/** \f$X^T\f$, i.e. the columns of X stored contiguously */
+	final double[] dictXTransposed;
+	/** \f$Y^T\f$, i.e. the columns of Y stored contiguously */
+	final double[] dictYTransposed;
+	/** The Gram matrix of the row atoms, \f$G_y = Y Y^T\f$ */
+	final double[] gramY;
+	/** The Gram matrix of the column atoms, \f$G_x = X^T X\f$ */
+	final double[] gramX;
+	/** The single precision tables, built on first use */
+	private volatile FloatDictionary floatTables;
+	
+	SeparableDictionary(int width) throws BadDimensionsException {
+		this.width = width;
+		this.atoms = 5*width;
+		
+		dictX = new DictionaryX(width).to1DArray().clone();
+		dictY = new DictionaryY(width).to1DArray().clone();
+		if(dictX.length != atoms*width || dictY.length != atoms*width) {
+			throw new BadDimensionsException("No dictionary is available for blocks of width " + width);
+		}
+		dictXTransposed = Matrix.transpose(dictX, width, atoms);
+		dictYTransposed = Matrix.transpose(dictY, atoms, width);
+		gramY = Gemm.multiply(dictY, dictYTransposed, atoms, width, atoms);
+		gramX = Gemm.multiply(dictXTransposed, dictX, atoms, width, atoms);
+	}
+	
+	/**
+	 * Gets the tables rounded to single precision, building them the first time they 
+	 * are requested. Threads which race to build them may each build a copy, which 
+	 * is harmless as the copies are equal.
+	 * @return The single precision tables
+	 */
+	FloatDictionary getFloatTables() {
+		FloatDictionary tables = floatTables;
+		if(tables == null) {
+			tables = floatTables = new FloatDictionary(this);
+		}
+		return tables;
+	}
+	
+	/**
+	 * Subtracts a multiple of the correlations between every atom and a single atom
+	 * @param correlations The 5N x 5N correlations, row by row
+	 * @param rowAtom The row atom of the single atom
+	 * @param colAtom The column atom of the single atom
+	 * @param weight The multiple to subtract
+	 */
+	void subtractCorrelations(double[] correlations, int rowAtom, int colAtom, double weight) {
+		Kernels kernels = Kernels.get();
+		int colOffset = colAtom*atoms;
+		for(int r = 0; r < atoms; r++) {
+			double scalar = weight*gramY[r*atoms + rowAtom];
+			if(scalar == 0) {
+				continue;
+			}
+			kernels.axpy(-scalar, gramX, colOffset, correlations, r*atoms, atoms);
+		}
+	}
+	
+	/**
+	 * @return The width and height of the blocks this dictionary applies to
+	 */
+	public int getWidth() {
+		return width;
+	}
+	
+	/**
+	 * @return The number of atoms in each dimension
+	 */
+	public int getAtoms() {
+		return atoms;
+	}
+	
+	/**
+	 * @return A copy of the row dictionary, \f$X^{N \times 5N}\f$
+	 */
+	public double[] getDictX() {
+		return dictX.clone();
+	}
+	
+	/**
+	 * @return A copy of the column dictionary, \f$Y^{5N \times N}\f$
+	 */
+	public double[] getDictY() {
+		return dictY.clone();
+	}
+	
+	/**
+	 * @return A copy of \f$X^T\f$
+	 */
+	public double[] getDictXTransposed() {
+		return dictXTransposed.clone();
+	}
+	
+	/**
+	 * @return A copy of \f$Y^T\f$
+	 */
+	public double[] getDictYTransposed() {
+		return dictYTransposed.clone();
+	}
+	
+	/**
+	 * @return A copy of \f$G_x = X^T X\f$
+	 */
+	public double[] getGramX() {
+		return gramX.clone();
+	}
+	
+	/**
+	 * @return A copy of \f$G_y = Y Y^T\f$
+	 */
+	public double[] getGramY() {
+		return gramY.clone();
+	}
+}
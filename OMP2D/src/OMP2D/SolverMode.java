@@ -0,0 +1,152 @@
+/*
+Copyright (c) 2014 Matthew Simons
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package OMP2D;
+
+/**
+ * The block solvers available to approximate an image
+ */
+public enum SolverMode {
+	/**
+	 * {@link OMP2D}, which keeps orthogonal and biorthogonal atoms
+	 */
+	GRAM_SCHMIDT("Gram-Schmidt", false) {
+		@Override
+		public AbstractBlockSolver create(double[] imageData, int width, int id, double tol, int maxIterations) {
+			return new OMP2D(imageData, width, id, tol, maxIterations);
+		}
+	},
+	/**
+	 * {@link CholeskyOMP2D}, which keeps a Cholesky factor of the selected atoms' Gram matrix
+	 */
+	CHOLESKY("Cholesky", false) {
+		@Override
+		public AbstractBlockSolver create(double[] imageData, int width, int id, double tol, int maxIterations) {
+			return new CholeskyOMP2D(imageData, width, id, tol, maxIterations);
+		}
+	},
+	/**
+	 * {@link BatchOMP2D}, which works from the correlations of the block and the Gram tables
+	 */
+	BATCH("Batch-OMP", false) {
+		@Override
+		public AbstractBlockSolver create(double[] imageData, int width, int id, double tol, int maxIterations) {
+			return new BatchOMP2D(imageData, width, id, tol, maxIterations);
+		}
+	},
+	/**
+	 * {@link FloatOMP2D}, which works in single precision
+	 */
+	FLOAT("Gram-Schmidt (float)", true) {
+		@Override
+		public AbstractBlockSolver create(double[] imageData, int width, int id, double tol, int maxIterations) {
+			return new FloatOMP2D(imageData, width, id, tol, maxIterations);
+		}
+	},
+	/**
+	 * {@link OMP2D} searching for atoms in single precision with {@link MixedPrecisionCorrelation}
+	 */
+	MIXED("Gram-Schmidt (mixed)", true) {
+		@Override
+		public AbstractBlockSolver create(double[] imageData, int width, int id, double tol, int maxIterations) {
+			OMP2D solver = new OMP2D(imageData, width, id, tol, maxIterations);
+			solver.setCorrelationEngine(MixedPrecisionCorrelation.INSTANCE);
+			return solver;
+		}
+	};
+	
+	private final String label;
+	private final boolean ownCorrelations;
+	
+	private SolverMode(String label, boolean ownCorrelations) {
+		this.label = label;
+		this.ownCorrelations = ownCorrelations;
+	}
+	
+	/**
+	 * Creates a new block processor
+	 * @param imageData The intensity values of the block
+	 * @param width The width of the block
+	 * @param id The position of the block within the image
+	 * @param tol The tolerance level to be achieved
+	 * @param maxIterations The maximum number of iterations to be done without meeting the tolerance level
+	 * @return The block processor
+	 */
+	public abstract AbstractBlockSolver create(double[] imageData, int width, int id, double tol, int maxIterations);
+	
+	/**
+	 * @return Whether the mode's solvers calculate their correlations in their own way,
+	 * rather than with an engine which may be chosen
+	 */
+	public boolean usesOwnCorrelations() {
+		return ownCorrelations;
+	}
+	
+	/**
+	 * Creates a new block processor which finds its correlations with the given engine,
+	 * unless the mode {@link #usesOwnCorrelations() uses its own}
+	 * @param imageData The intensity values of the block
+	 * @param width The width of the block
+	 * @param id The position of the block within the image
+	 * @param tol The tolerance level to be achieved
+	 * @param maxIterations The maximum number of iterations to be done without meeting the tolerance level
+	 * @param engine 
+	 * @return The block processor
+	 */
+	public AbstractBlockSolver create(double[] imageData, int width, int id, double tol, int maxIterations, CorrelationEngine engine) {
+		AbstractBlockSolver solver = create(imageData, width, id, tol, maxIterations);
+		if(!ownCorrelations) {
+			solver.setCorrelationEngine(engine);
+		}
+		return solver;
+	}
+	
+	@Override
+	public String toString() {
+		return label;
+	}
+	
+	/**
+	 * @return The names of every mode, suitable for display
+	 */
+	public static String[] labels() {
+		SolverMode[] modes = values();
+		String[] labels = new String[modes.length];
+		for(int i = 0; i < modes.length; i++) {
+			labels[i] = modes[i].label;
+		}
+		return labels;
+	}
+	
+	/**
+	 * @param label The display name of a mode
+	 * @return The mode with the given name
+	 */
+	public static SolverMode fromLabel(String label) {
+		for(SolverMode mode : values()) {
+			if(mode.label.equals(label)) {
+				return mode;
+			}
+		}
+		throw new IllegalArgumentException("Unknown solver: " + label);
+	}
+}
@@ -0,0 +1,138 @@
+/*
+Copyright (c) 2014 Matthew Simons
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package OMP2D;
+
+import java.util.Arrays;
+
+/**
+ * The sparse code of one block: the coefficient of each Kronecker atom selected for it,
+ * identified by its row and column atoms of the separable dictionary. The block is 
+ * approximated by \f$\sum_k c_k\, d_{col_k} d_{row_k}^T\f$, where \f$d_a\f$ is atom a of 
+ * the row dictionary, so a code of k atoms takes 12k bytes rather than the 8N^2 of a 
+ * dense block.
+ */
+public class SparseBlockCode {
+	private final int blockId, width;
+	private final short[] rowAtoms, colAtoms;
+	private final double[] coefficients;
+	
+	/**
+	 * @param blockId The position of the block within the image
+	 * @param width The width of the block
+	 * @param rowAtoms The row atom of each selected atom
+	 * @param colAtoms The column atom of each selected atom
+	 * @param coefficients The coefficient of each selected atom
+	 */
+	public SparseBlockCode(int blockId, int width, short[] rowAtoms, short[] colAtoms, double[] coefficients) {
+		if(rowAtoms.length != coefficients.length || colAtoms.length != coefficients.length) {
+			throw new IllegalArgumentException("Each atom needs a row atom, a column atom and a coefficient");
+		}
+		this.blockId = blockId;
+		this.width = width;
+		this.rowAtoms = rowAtoms;
+		this.colAtoms = colAtoms;
+		this.coefficients = coefficients;
+	}
+	
+	/**
+	 * Creates a code from atom indices held as ints
+	 * @param blockId The position of the block within the image
+	 * @param width The width of the block
+	 * @param rowAtoms The row atom of each selected atom
+	 * @param colAtoms The column atom of each selected atom
+	 * @param coefficients The coefficient of each selected atom
+	 * @return The code
+	 */
+	public static SparseBlockCode of(int blockId, int width, int[] rowAtoms, int[] colAtoms, double[] coefficients) {
+		return new SparseBlockCode(blockId, width, toShorts(rowAtoms), toShorts(colAtoms), coefficients);
+	}
+	
+	private static short[] toShorts(int[] atoms) {
+		short[] shorts = new short[atoms.length];
+		for(int k = 0; k < atoms.length; k++) {
+			if(atoms[k] < 0 || atoms[k] > Short.MAX_VALUE) {
+				throw new IllegalArgumentException("Atom " + atoms[k] + " cannot be held as a short");
+			}
+			shorts[k] = (short) atoms[k];
+		}
+		return shorts;
+	}
+	
+	public int getBlockId() {
+		return blockId;
+	}
+	
+	public int getWidth() {
+		return width;
+	}
+	
+	/**
+	 * @return The number of atoms in the code
+	 */
+	public int getAtomCount() {
+		return coefficients.length;
+	}
+	
+	public short[] getRowAtoms() {
+		return rowAtoms;
+	}
+	
+	public short[] getColAtoms() {
+		return colAtoms;
+	}
+	
+	public double[] getCoefficients() {
+		return coefficients;
+	}
+	
+	/**
+	 * Writes the approximation the code describes
+	 * @param block The array to write the block to, row by row
+	 * @throws BadDimensionsException If the array is too small, or no dictionary exists for the block size
+	 */
+	public void reconstruct(double[] block) throws BadDimensionsException {
+		if(block.length < width*width) {
+			throw new BadDimensionsException("A block of width " + width + " does not fit in " + block.length + " elements");
+		}
+		double[] dict = DictionaryRegistry.get(width).dictY;
+		Kernels kernels = Kernels.get();
+		Arrays.fill(block, 0, width*width, 0);
+		for(int k = 0; k < coefficients.length; k++) {
+			int row = rowAtoms[k]*width;
+			int col = colAtoms[k]*width;
+			for(int j = 0; j < width; j++) {
+				kernels.axpy(coefficients[k]*dict[col+j], dict, row, block, j*width, width);
+			}
+		}
+	}
+	
+	/**
+	 * @return The approximation the code describes, row by row
+	 * @throws BadDimensionsException If no dictionary exists for the block size
+	 */
+	public double[] toDense() throws BadDimensionsException {
+		double[] block = new double[width*width];
+		reconstruct(block);
+		return block;
+	}
+}
@@ -0,0 +1,245 @@
+/*
+Copyright (c) 2014 Matthew Simons
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package OMP2D;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Reconstructs images from the {@link SparseBlockCode sparse codes} of their blocks, 
+ * writing pixels straight into an 8 bit image buffer. Each block is found separably as 
+ * \f$D_c^T W\f$: the coefficients of the atoms sharing a column atom are first gathered 
+ * into one combination of row atoms, a row of W, so each distinct column atom costs 
+ * N row updates rather than each atom costing N^2 elements.
+ * 
+ * Blocks are numbered row by row across the image, as in the plugin, and each row of 
+ * blocks is decoded by its own task, as the rows write to separate pixels. Like the 
+ * plugin, only whole blocks are decoded; any pixels past the last whole block across 
+ * or down the image are left as they are.
+ */
+public class SparseDecoder {
+	private final BlockParallelism parallelism;
+	
+	/**
+	 * @param pool The pool to decode the rows of blocks in
+	 */
+	public SparseDecoder(ForkJoinPool pool) {
+		this.parallelism = new BlockParallelism(pool, 0);
+	}
+	
+	/**
+	 * Creates a decoder which uses the common pool
+	 */
+	public SparseDecoder() {
+		this(ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Converts an intensity to a pixel as the plugin does: values above 255 become 255,
+	 * and anything else is narrowed as a cast would
+	 * @param value
+	 * @return The pixel
+	 */
+	public static byte toByte(double value) {
+		return (byte) (value > 255 ? -1 : value);
+	}
+	
+	/**
+	 * Decodes the blocks into an image of intensities, which are neither rounded nor clamped
+	 * @param codes The codes of the blocks, in any order; null codes are skipped
+	 * @param imageWidth The width of the image in pixels
+	 * @param imageHeight The height of the image in pixels
+	 * @param pixels The image, row by row, whose decoded blocks are overwritten
+	 * @throws BadDimensionsException If a block does not fit in the image, or the 
+	 * blocks are not all the same width
+	 */
+	public void decode(SparseBlockCode[] codes, int imageWidth, int imageHeight, final double[] pixels) throws BadDimensionsException {
+		decode(codes, imageWidth, imageHeight, pixels.length, new Output() {
+			@Override
+			void write(int index, double value) {
+				pixels[index] = value;
+			}
+		});
+	}
+	
+	/**
+	 * Decodes the blocks into an 8 bit image, converting each intensity with {@link #toByte(double)}
+	 * @param codes The codes of the blocks, in any order; null codes are skipped
+	 * @param imageWidth The width of the image in pixels
+	 * @param imageHeight The height of the image in pixels
+	 * @param pixels The image, row by row, whose decoded blocks are overwritten
+	 * @throws BadDimensionsException If a block does not fit in the image, or the 
+	 * blocks are not all the same width
+	 */
+	public void decode(SparseBlockCode[] codes, int imageWidth, int imageHeight, final byte[] pixels) throws BadDimensionsException {
+		decode(codes, imageWidth, imageHeight, pixels.length, new Output() {
+			@Override
+			void write(int index, double value) {
+				pixels[index] = toByte(value);
+			}
+		});
+	}
+	
+	/**
+	 * Decodes the blocks into an image held in shorts, writing the same values as 
+	 * {@link #decode(SparseBlockCode[], int, int, byte[])}, read as unsigned bytes
+	 * @param codes The codes of the blocks, in any order; null codes are skipped
+	 * @param imageWidth The width of the image in pixels
+	 * @param imageHeight The height of the image in pixels
+	 * @param pixels The image, row by row, whose decoded blocks are overwritten
+	 * @throws BadDimensionsException If a block does not fit in the image, or the 
+	 * blocks are not all the same width
+	 */
+	public void decode(SparseBlockCode[] codes, int imageWidth, int imageHeight, final short[] pixels) throws BadDimensionsException {
+		decode(codes, imageWidth, imageHeight, pixels.length, new Output() {
+			@Override
+			void write(int index, double value) {
+				pixels[index] = (short) (toByte(value) & 0xff);
+			}
+		});
+	}
+	
+	private void decode(SparseBlockCode[] codes, final int imageWidth, int imageHeight, int length, 
+			final Output output) throws BadDimensionsException {
+		int width = 0;
+		for(SparseBlockCode code : codes) {
+			if(code == null) {
+				continue;
+			}
+			if(width != 0 && code.getWidth() != width) {
+				throw new BadDimensionsException("Blocks of width " + code.getWidth() + " and " + width + 
+						" cannot be decoded together");
+			}
+			width = code.getWidth();
+		}
+		if(width == 0) {
+			return;
+		}
+		if(length < imageWidth*imageHeight) {
+			throw new BadDimensionsException("An image of " + imageWidth + "x" + imageHeight + 
+					" cannot be held in " + length + " pixels");
+		}
+		
+		//sort the codes into rows of blocks
+		final int blocksX = imageWidth / width;
+		int blocksY = imageHeight / width;
+		final SparseBlockCode[][] rows = new SparseBlockCode[blocksY][blocksX];
+		for(SparseBlockCode code : codes) {
+			if(code == null) {
+				continue;
+			}
+			int id = code.getBlockId();
+			if(id < 0 || id >= blocksX*blocksY) {
+				throw new BadDimensionsException("Block " + id + " lies outside the image");
+			}
+			rows[id / blocksX][id % blocksX] = code;
+		}
+		
+		final int n = width;
+		final double[] dict = DictionaryRegistry.get(width).dictY;
+		parallelism.forEach(0, blocksY, 1, new BlockParallelism.Range() {
+			@Override
+			public void run(int from, int to) {
+				Decoder decoder = new Decoder(dict, n);
+				for(int bY = from; bY < to; bY++) {
+					for(int bX = 0; bX < blocksX; bX++) {
+						SparseBlockCode code = rows[bY][bX];
+						if(code == null) {
+							continue;
+						}
+						double[] block = decoder.decode(code);
+						for(int j = 0; j < n; j++) {
+							int pixel = (bY*n + j)*imageWidth + bX*n;
+							for(int i = 0; i < n; i++) {
+								output.write(pixel + i, block[j*n + i]);
+							}
+						}
+					}
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Where decoded intensities are written
+	 */
+	private static abstract class Output {
+		abstract void write(int index, double value);
+	}
+	
+	/**
+	 * The buffers to decode blocks of one width, used by one thread
+	 */
+	private static class Decoder {
+		private final double[] dict;
+		private final int width, atoms;
+		//the slot of each column atom in use, and the column atom of each slot
+		private final int[] slots, colAtoms;
+		//the combination of row atoms for each column atom in use
+		private final double[] combinations;
+		private final double[] block;
+		
+		Decoder(double[] dict, int width) {
+			this.dict = dict;
+			this.width = width;
+			this.atoms = 5*width;
+			slots = new int[atoms];
+			colAtoms = new int[atoms];
+			combinations = new double[atoms*width];
+			block = new double[width*width];
+		}
+		
+		/**
+		 * @param code
+		 * @return The block, row by row, valid until the next block is decoded
+		 */
+		double[] decode(SparseBlockCode code) {
+			short[] rowAtoms = code.getRowAtoms();
+			short[] codeColAtoms = code.getColAtoms();
+			double[] coefficients = code.getCoefficients();
+			Kernels kernels = Kernels.get();
+			
+			Arrays.fill(slots, -1);
+			int used = 0;
+			for(int k = 0; k < coefficients.length; k++) {
+				int col = codeColAtoms[k];
+				int slot = slots[col];
+				if(slot < 0) {
+					slot = slots[col] = used++;
+					colAtoms[slot] = col;
+					Arrays.fill(combinations, slot*width, (slot+1)*width, 0);
+				}
+				kernels.axpy(coefficients[k], dict, rowAtoms[k]*width, combinations, slot*width, width);
+			}
+			
+			//row j of the block is the combinations weighted by element j of their column atoms
+			Arrays.fill(block, 0);
+			for(int j = 0; j < width; j++) {
+				for(int s = 0; s < used; s++) {
+					kernels.axpy(dict[colAtoms[s]*width + j], combinations, s*width, block, j*width, width);
+				}
+			}
+			return block;
+		}
+	}
+}
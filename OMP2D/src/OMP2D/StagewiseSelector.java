@@ -0,0 +1,66 @@
+/*
+Copyright (c) 2014 Matthew Simons
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package OMP2D;
+
+/**
+ * Stagewise selection: selects every atom whose absolute correlation is at least a 
+ * fraction of the largest, up to the number of atoms remaining
+ */
+public class StagewiseSelector implements AtomSelector {
+	private final double threshold;
+	
+	/**
+	 * @param threshold The fraction, between 0 and 1, of the largest absolute 
+	 * correlation an atom must reach to be selected
+	 */
+	public StagewiseSelector(double threshold) {
+		if(threshold <= 0 || threshold > 1) {
+			throw new IllegalArgumentException("The threshold must be within (0, 1]");
+		}
+		this.threshold = threshold;
+	}
+
+	@Override
+	public int select(OMP2DWorkspace ws, int k, int limit, double maxAbs) {
+		final int atoms = ws.atoms;
+		double[] innerProducts = ws.innerProducts;
+		double cutOff = threshold*maxAbs;
+		int argMax = ws.rowAtoms[k]*atoms + ws.colAtoms[k];
+		
+		//the largest is always kept first, the rest follow row by row
+		int found = 1;
+		for(int i = 0; i < atoms*atoms && found < limit; i++) {
+			if(i != argMax && Math.abs(innerProducts[i]) >= cutOff) {
+				ws.rowAtoms[k+found] = i / atoms;
+				ws.colAtoms[k+found] = i % atoms;
+				found++;
+			}
+		}
+		return found;
+	}
+	
+	@Override
+	public boolean usesCorrelations() {
+		return true;
+	}
+}
@@ -0,0 +1,62 @@
+/*
+Copyright (c) 2014 Matthew Simons
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package OMP2D;
+
+/**
+ * Stops once the PSNR of the block has improved by less than a number of decibels 
+ * over the last <code>window</code> atoms
+ */
+public class StagnationTermination implements TerminationPolicy {
+	private final int window;
+	private final double minGain;
+	
+	/**
+	 * @param window The number of atoms to measure the improvement over
+	 * @param minGain The smallest improvement in PSNR, in dB, over the window
+	 */
+	public StagnationTermination(int window, double minGain) {
+		if(window < 1) {
+			throw new IllegalArgumentException("The window must contain at least one atom");
+		}
+		this.window = window;
+		this.minGain = minGain;
+	}
+
+	@Override
+	public Termination check(double[] energies, int previousAtoms, int atoms, long elapsed) {
+		if(atoms < window) {
+			return null;
+		}
+		//the PSNR gain is 10 log10 of the ratio of the residual energies
+		double gain = 10*Math.log10(energies[atoms-window] / energies[atoms]);
+		if(gain < minGain) {
+			return Termination.STAGNATION;
+		}
+		return null;
+	}
+
+	@Override
+	public int atomLimit() {
+		return Integer.MAX_VALUE;
+	}
+}
@@ -0,0 +1,76 @@
+/*
+Copyright (c) 2014 Matthew Simons
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package OMP2D;
+
+/**
+ * The reason a block solver stopped adding atoms
+ */
+public enum Termination {
+	/**
+	 * The residual energy fell below the tolerance
+	 */
+	TOLERANCE("Tolerance reached"),
+	/**
+	 * The maximum number of iterations was reached
+	 */
+	MAX_ITERATIONS("Maximum iterations"),
+	/**
+	 * The block could not be improved upon, e.g. it has no texture
+	 */
+	NO_IMPROVEMENT("No improvement"),
+	/**
+	 * Every atom selected was already spanned by those before it
+	 */
+	DEPENDENT_ATOMS("Dependent atoms"),
+	/**
+	 * The last atoms reduced the residual energy by too small a fraction
+	 * @see RelativeImprovementTermination
+	 */
+	RELATIVE_IMPROVEMENT("Relative improvement"),
+	/**
+	 * The PSNR barely changed over a window of atoms
+	 * @see StagnationTermination
+	 */
+	STAGNATION("Stagnation"),
+	/**
+	 * The block used all of its atoms
+	 * @see AtomBudgetTermination
+	 */
+	ATOM_BUDGET("Atom budget"),
+	/**
+	 * The block took too long to process
+	 * @see TimeBudgetTermination
+	 */
+	TIME_BUDGET("Time budget");
+	
+	private final String label;
+	
+	private Termination(String label) {
+		this.label = label;
+	}
+	
+	@Override
+	public String toString() {
+		return label;
+	}
+}
@@ -0,0 +1,52 @@
+/*
+Copyright (c) 2014 Matthew Simons
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package OMP2D;
+
+/**
+ * Decides whether a block solver should stop before reaching the tolerance or its
+ * maximum number of iterations. Policies are consulted after each iteration, once 
+ * the tolerance has been checked.
+ * 
+ * Policies hold no per block state, so a single policy may be shared by many threads.
+ */
+public interface TerminationPolicy {
+	
+	/**
+	 * @param energies The residual energy of the block after each number of atoms, 
+	 * where <code>energies[0]</code> is the energy of the block itself
+	 * @param previousAtoms The number of atoms selected before this iteration, which 
+	 * may have added several
+	 * @param atoms The number of atoms selected so far
+	 * @param elapsed The time spent on the block so far, in nanoseconds
+	 * @return The rule which fired, or null to carry on
+	 */
+	public Termination check(double[] energies, int previousAtoms, int atoms, long elapsed);
+	
+	/**
+	 * Lets solvers which add several atoms per iteration stop short of a fixed number 
+	 * of atoms, rather than overshooting it before the policy is next consulted
+	 * @return The most atoms the policy lets a block be given, or 
+	 * <code>Integer.MAX_VALUE</code> if it does not limit them
+	 */
+	public int atomLimit();
+}
@@ -0,0 +1,51 @@
+/*
+Copyright (c) 2014 Matthew Simons
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package OMP2D;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops once a block has taken longer than a fixed time. The block keeps the atoms 
+ * selected so far, so the time may be exceeded by up to one iteration.
+ */
+public class TimeBudgetTermination implements TerminationPolicy {
+	private final long budget;
+	
+	/**
+	 * @param budget The longest time to spend on a block
+	 * @param unit The unit of the budget
+	 */
+	public TimeBudgetTermination(long budget, TimeUnit unit) {
+		this.budget = unit.toNanos(budget);
+	}
+
+	@Override
+	public Termination check(double[] energies, int previousAtoms, int atoms, long elapsed) {
+		return elapsed > budget ? Termination.TIME_BUDGET : null;
+	}
+
+	@Override
+	public int atomLimit() {
+		return Integer.MAX_VALUE;
+	}
+}
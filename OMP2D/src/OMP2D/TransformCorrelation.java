@@ -0,0 +1,106 @@
+/*
+Copyright (c) 2014 Matthew Simons
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package OMP2D;
+
+/**
+ * Calculates the correlations \f$Y R X\f$ on every iteration with fast transforms rather 
+ * than dense products, exploiting the cosine, sine and Dirac structure of the dictionaries.
+ * The results match {@link DenseCorrelation} to within rounding.
+ * 
+ * @see DictionaryTransform
+ */
+public class TransformCorrelation implements FusedCorrelationEngine {
+	public static final TransformCorrelation INSTANCE = new TransformCorrelation();
+	
+	@Override
+	public void correlate(OMP2DWorkspace ws, int k) {
+		final int width = ws.width;
+		final int atoms = ws.atoms;
+		DictionaryTransform transform = ws.getTransform();
+		double[] temp = ws.temp;
+		double[] innerProducts = ws.innerProducts;
+		transformColumns(ws);
+		
+		//innerProducts = temp*dictX, transforming the rows of temp in pairs
+		for(int m = 0; m < atoms; m += 2) {
+			boolean pair = m+1 < atoms;
+			transform.analyse(temp, m*width, 1, pair ? temp : null, (m+1)*width, 1, 
+					innerProducts, m*atoms, pair ? innerProducts : null, (m+1)*atoms, 1);
+		}
+	}
+
+	/**
+	 * Transforms two rows of temp at a time into a scratch buffer which is then scanned
+	 * in the same order as {@link OMP2DWorkspace#findMaxAbs(int)}
+	 */
+	@Override
+	public double correlateMaxAbs(OMP2DWorkspace ws, int k) {
+		final int width = ws.width;
+		final int atoms = ws.atoms;
+		DictionaryTransform transform = ws.getTransform();
+		double[] temp = ws.temp;
+		double[] rows = ws.getCorrelationRows();
+		transformColumns(ws);
+		
+		double maxAbs = 0;
+		int maxAbsRow = 0, maxAbsCol = 0;
+		for(int m = 0; m < atoms; m += 2) {
+			boolean pair = m+1 < atoms;
+			transform.analyse(temp, m*width, 1, pair ? temp : null, (m+1)*width, 1, 
+					rows, 0, pair ? rows : null, atoms, 1);
+			int count = pair ? 2*atoms : atoms;
+			for(int i = 0; i < count; i++) {
+				double abs = Math.abs(rows[i]);
+				if(abs > maxAbs) {
+					maxAbs = abs;
+					maxAbsRow = m + i/atoms;
+					maxAbsCol = i%atoms;
+				}
+			}
+		}
+		ws.rowAtoms[k] = maxAbsRow;
+		ws.colAtoms[k] = maxAbsCol;
+		return maxAbs;
+	}
+	
+	/**
+	 * Calculates temp = dictY*residue, transforming the columns of the residue in pairs
+	 * @param ws
+	 */
+	private static void transformColumns(OMP2DWorkspace ws) {
+		final int width = ws.width;
+		DictionaryTransform transform = ws.getTransform();
+		double[] residue = ws.residue;
+		double[] temp = ws.temp;
+		for(int q = 0; q < width; q += 2) {
+			boolean pair = q+1 < width;
+			transform.analyse(residue, q, width, pair ? residue : null, q+1, width, 
+					temp, q, pair ? temp : null, q+1, width);
+		}
+	}
+
+	@Override
+	public int coordinateRows(int width) {
+		return 0;
+	}
+}
@@ -0,0 +1,62 @@
+/*
+Copyright (c) 2014 Matthew Simons
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package OMP2D;
+
+/**
+ * Weak selection: selects the first atom, row by row, whose absolute correlation is 
+ * at least a fraction of the largest
+ */
+public class WeakSelector implements AtomSelector {
+	private final double weakness;
+	
+	/**
+	 * @param weakness The fraction, between 0 and 1, of the largest absolute correlation
+	 * the selected atom must reach
+	 */
+	public WeakSelector(double weakness) {
+		if(weakness <= 0 || weakness > 1) {
+			throw new IllegalArgumentException("The weakness parameter must be within (0, 1]");
+		}
+		this.weakness = weakness;
+	}
+
+	@Override
+	public int select(OMP2DWorkspace ws, int k, int limit, double maxAbs) {
+		final int atoms = ws.atoms;
+		double[] innerProducts = ws.innerProducts;
+		double cutOff = weakness*maxAbs;
+		for(int i = 0; i < atoms*atoms; i++) {
+			if(Math.abs(innerProducts[i]) >= cutOff) {
+				ws.rowAtoms[k] = i / atoms;
+				ws.colAtoms[k] = i % atoms;
+				break;
+			}
+		}
+		return 1;
+	}
+	
+	@Override
+	public boolean usesCorrelations() {
+		return true;
+	}
+}
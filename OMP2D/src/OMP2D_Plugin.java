@@ -49,8 +49,19 @@ import java.util.concurrent.TimeUnit;
 
 import javax.swing.JLabel;
 
+import OMP2D.AbstractBlockSolver;
 import OMP2D.BadDimensionsException;
+import OMP2D.BlockBatch;
+import OMP2D.BlockParallelism;
+import OMP2D.BlockSolver;
+import OMP2D.CorrelationEngine;
+import OMP2D.DenseCorrelation;
 import OMP2D.OMP2D;
+import OMP2D.SolverMode;
+import OMP2D.SparseBlockCode;
+import OMP2D.SparseDecoder;
+import OMP2D.Termination;
+import OMP2D.TransformCorrelation;
 
 public class OMP2D_Plugin implements PlugInFilter {
 	
@@ -58,12 +69,15 @@ public class OMP2D_Plugin implements PlugInFilter {
 	private byte[] imagePixels;
 	private double[] image, approx;
 	private int totalCoeffs = 0;
+	private int[] terminations = new int[Termination.values().length];
 	private int progress;
 
 	private int imageWidth, imageHeight;
 	private int numBlocksX, numBlocksY;
 	private ImagePlus preview;
 	private String threadOption;
+	private SolverMode solverMode = SolverMode.GRAM_SCHMIDT;
+	private CorrelationEngine correlationEngine = DenseCorrelation.INSTANCE;
 	private final String[] threadOptions = new String[] {
 			"Single Threaded",
 			"Multi-Threaded",
@@ -75,6 +89,9 @@ public class OMP2D_Plugin implements PlugInFilter {
 	private double TOLERANCE;
 	private int MAX_ITERATIONS;
 	private boolean debug;
+	private boolean batched;
+	private boolean keepCodes;
+	private SparseBlockCode[] sparseCodes;
 
 	@Override
 	public void run(ImageProcessor ip) {
@@ -84,6 +101,7 @@ public class OMP2D_Plugin implements PlugInFilter {
 		
 		TOLERANCE = (MAX_INTENSITY*MAX_INTENSITY)/(Math.pow(10, (PSS/10.0)));
 		approxBlocks = new double[numBlocksX*numBlocksY][BLOCK_DIM*BLOCK_DIM];
+		sparseCodes = keepCodes ? new SparseBlockCode[numBlocksX*numBlocksY] : null;
 		
 		imageBlocks = makeBlocks();
 		
@@ -98,6 +116,9 @@ public class OMP2D_Plugin implements PlugInFilter {
 		double totalTime = (System.currentTimeMillis() - start)/1000.0;
 		
 		approx = buildBlocks(approxBlocks);
+		if(sparseCodes != null) {
+			decodeBlocks(approx);
+		}
 		image = buildBlocks(imageBlocks);
 		
 		preview = buildImage(imageWidth, imageHeight, approx);
@@ -106,6 +127,7 @@ public class OMP2D_Plugin implements PlugInFilter {
 		
 		if(debug) {
 			printApprox();
+			printTerminations();
 			saveImage(preview);
 		}
 
@@ -164,6 +186,10 @@ public class OMP2D_Plugin implements PlugInFilter {
 			GenericDialog options = new GenericDialog("OMP2D Image Compression Options");
 			options.addRadioButtonGroup("Single or Multi-Threaded", threadOptions, 3, 1, "Multi-Threaded");
 			options.addChoice("Block Size", new String[] {"8x8", "16x16", "32x32"}, "16x16");
+			options.addChoice("Solver", SolverMode.labels(), SolverMode.GRAM_SCHMIDT.toString());
+			options.addCheckbox("Fast Transforms", false);
+			options.addCheckbox("Batch Blocks", false);
+			options.addCheckbox("Keep Sparse Codes", false);
 			options.addNumericField("PSS", 50.0, 2, 4, "");
 			options.addNumericField("Maximum Iterations", 250, 0, 4, "");
 			options.addCheckbox("Debug", false);
@@ -187,6 +213,19 @@ public class OMP2D_Plugin implements PlugInFilter {
 				continue;
 			}
 			
+			solverMode = SolverMode.fromLabel(options.getNextChoice());
+			
+			//the transforms are opt in, as their output differs from the dense products by rounding;
+			//the dense products are quicker for the smallest blocks, and batches always use them
+			boolean fastTransforms = options.getNextBoolean();
+			batched = options.getNextBoolean();
+			keepCodes = options.getNextBoolean();
+			if(fastTransforms && BLOCK_DIM > 8 && !batched) {
+				correlationEngine = TransformCorrelation.INSTANCE;
+			} else {
+				correlationEngine = DenseCorrelation.INSTANCE;
+			}
+			
 			if(Double.isNaN(PSS = options.getNextNumber())) {
 				IJ.error("Invalid Options", "The number entered for PSS must be a positive number");
 				continue;
@@ -205,6 +244,71 @@ public class OMP2D_Plugin implements PlugInFilter {
 		return DOES_8G+NO_CHANGES+NO_UNDO;
 	}
 	
+	/**
+	 * Adds a processed block's results to those of the image, keeping its sparse code if asked to
+	 * @param block
+	 */
+	private void recordBlock(BlockSolver block) {
+		SparseBlockCode code = null;
+		if(sparseCodes != null && block instanceof OMP2D) {
+			code = ((OMP2D) block).getSparseCode();
+		}
+		synchronized(approxBlocks) {
+			totalCoeffs += block.getNumCoefficients();
+			terminations[block.getTermination().ordinal()]++;
+			if(code != null) {
+				sparseCodes[block.getBlockId()] = code;
+			} else {
+				approxBlocks[block.getBlockId()] = block.getApproxData();
+			}
+			IJ.showProgress(++progress, imageBlocks.length);
+		}
+	}
+	
+	/**
+	 * @return The sparse code of each block of the last image, by block id, if they were 
+	 * kept; blocks solved without one, by solvers other than {@link OMP2D}, are null
+	 */
+	public SparseBlockCode[] getSparseCodes() {
+		return sparseCodes;
+	}
+	
+	/**
+	 * Decodes the blocks whose sparse codes were kept, which were solved without 
+	 * reconstructing themselves, straight into the approximated image
+	 * @param img The approximated image, whose coded blocks are overwritten
+	 */
+	private void decodeBlocks(double[] img) {
+		try {
+			new SparseDecoder().decode(sparseCodes, imageWidth, imageHeight, img);
+		} catch(BadDimensionsException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	/**
+	 * Stops an {@link OMP2D} block reconstructing itself when its sparse code is kept, 
+	 * as the approximation is then decoded from the codes
+	 * @param block
+	 */
+	private void setOutput(AbstractBlockSolver block) {
+		if(keepCodes && block instanceof OMP2D) {
+			((OMP2D) block).setDenseOutput(false);
+		}
+	}
+	
+	/**
+	 * Logs how many blocks stopped for each reason
+	 */
+	private void printTerminations() {
+		for(Termination termination : Termination.values()) {
+			int count = terminations[termination.ordinal()];
+			if(count > 0) {
+				IJ.log(termination + ": " + count + " blocks");
+			}
+		}
+	}
+	
 	/**
 	 * Prints the approximated image pixel values to file
 	 */
@@ -230,13 +334,15 @@ public class OMP2D_Plugin implements PlugInFilter {
 	 * @param ip
 	 */
 	private void singleThread(ImageProcessor ip) {
+		progress = 0;
 		for(int b = 0; b < imageBlocks.length; b++) {
 			try {
-				OMP2D blockProcessor = new OMP2D(imageBlocks[b], BLOCK_DIM, b, TOLERANCE, MAX_ITERATIONS);
+				AbstractBlockSolver blockProcessor = solverMode.create(imageBlocks[b], BLOCK_DIM, b, TOLERANCE, MAX_ITERATIONS, correlationEngine);
+				blockProcessor.setDebug(debug);
+				blockProcessor.setApproximationOnly(true);
+				setOutput(blockProcessor);
 				blockProcessor.calcBlock();
-				totalCoeffs += blockProcessor.getNumCoefficients();
-				approxBlocks[b] = blockProcessor.getApproxImage().to1DArray();
-				IJ.showProgress(b, imageBlocks.length);
+				recordBlock(blockProcessor);
 			} catch (Exception e) {
 				System.err.println("Uh Oh! Block: " + b + " failed");
 				e.printStackTrace();
@@ -246,10 +352,21 @@ public class OMP2D_Plugin implements PlugInFilter {
 	}
 
 	protected void multiThread(ImageProcessor ip) {
-		List<OMP2D> blockProcessors = new ArrayList<OMP2D>();
+		List<BlockSolver> blockProcessors = new ArrayList<BlockSolver>();
+		
+		//cores left idle by the blocks can share the work within each block
+		BlockParallelism parallelism = null;
+		if(imageBlocks.length < Runtime.getRuntime().availableProcessors()) {
+			parallelism = BlockParallelism.common();
+		}
 		
 		for(int b = 0; b < imageBlocks.length; b++) {
-			OMP2D blockProcessor = new OMP2D(imageBlocks[b], BLOCK_DIM, b, TOLERANCE, MAX_ITERATIONS);
+			AbstractBlockSolver blockProcessor = solverMode.create(imageBlocks[b], BLOCK_DIM, b, TOLERANCE, MAX_ITERATIONS, correlationEngine);
+			blockProcessor.setDebug(debug);
+			blockProcessor.setParallelism(parallelism);
+			//only the approximations and the number of atoms are reported
+			blockProcessor.setApproximationOnly(true);
+			setOutput(blockProcessor);
 			blockProcessors.add(blockProcessor);
 		}
 		
@@ -264,34 +381,51 @@ public class OMP2D_Plugin implements PlugInFilter {
 	
 	/**
 	 * Processes an array of blocks asynchronously. The number of concurrently running 
-	 * threads is set to the maximum number available for the given platform  
-	 * @param blocks The OMP2D blocks to be processed
+	 * threads is set to the maximum number available for the given platform. If batching
+	 * is enabled, the blocks a {@link BlockBatch} accepts are shared between the threads 
+	 * in batches, rather than submitted one by one.
+	 * @param blocks The blocks to be processed
 	 * @throws InterruptedException
 	 * @throws ExecutionException
 	 */
-	public void processBlocks(List<OMP2D> blocks) throws InterruptedException, ExecutionException {
+	public void processBlocks(List<? extends BlockSolver> blocks) throws InterruptedException, ExecutionException {
 		progress = 0;
 	    int threads = Runtime.getRuntime().availableProcessors();
 	    ExecutorService service = Executors.newFixedThreadPool(threads);
+	    List<OMP2D> batchable = new ArrayList<OMP2D>();
 
 	    //List<Future<OMP2D>> futures = new ArrayList<Future<OMP2D>>();
-	    for(final OMP2D block : blocks) {
-	        Callable<OMP2D> callable = new Callable<OMP2D>() {
-	            public OMP2D call() throws BadDimensionsException {
+	    for(final BlockSolver block : blocks) {
+	    	if(batched && BlockBatch.accepts(block)) {
+	    		batchable.add((OMP2D) block);
+	    		continue;
+	    	}
+	        Callable<BlockSolver> callable = new Callable<BlockSolver>() {
+	            public BlockSolver call() throws BadDimensionsException {
 					block.calcBlock();
-
-					synchronized(approxBlocks) {
-						totalCoeffs += block.getNumCoefficients();
-						approxBlocks[block.BLOCK_ID] = block.getApproxImage().to1DArray();
-						IJ.showProgress(++progress, imageBlocks.length);
-					}
+					recordBlock(block);
 	                return block;
 	            }
 	        };
 	        //futures.add(service.submit(callable));
 	        service.submit(callable);
 	    }
-
+	    
+	    int perThread = (batchable.size() + threads - 1) / threads;
+	    for(int from = 0; from < batchable.size(); from += perThread) {
+	    	final List<OMP2D> batch = batchable.subList(from, Math.min(batchable.size(), from + perThread));
+	    	Callable<BlockBatch> callable = new Callable<BlockBatch>() {
+	    		public BlockBatch call() throws BadDimensionsException {
+	    			BlockBatch blockBatch = new BlockBatch(batch);
+	    			blockBatch.calcBlocks();
+	    			for(OMP2D block : batch) {
+	    				recordBlock(block);
+	    			}
+	    			return blockBatch;
+	    		}
+	    	};
+	    	service.submit(callable);
+	    }
 
 	    service.shutdown();
 	    service.awaitTermination(1000, TimeUnit.SECONDS);
@@ -419,7 +553,7 @@ public class OMP2D_Plugin implements PlugInFilter {
 	private byte[] doubleToByteArray(double[] d) {
 		byte[] b = new byte[d.length];
 		for(int i = 0; i < d.length; i++) {
-			b[i] = (byte) (d[i] > 255 ? -1 : d[i]);
+			b[i] = SparseDecoder.toByte(d[i]);
 		}
 		return b;
 	}
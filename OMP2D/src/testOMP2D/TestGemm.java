@@ -0,0 +1,180 @@
+package testOMP2D;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import OMP2D.BadDimensionsException;
+import OMP2D.BasicMatrix;
+import OMP2D.BufferPool;
+import OMP2D.Gemm;
+import OMP2D.Matrix;
+import OMP2D.MatrixView;
+
+public class TestGemm {
+	private final double NO_MARGIN = 0.0;
+
+	private Random random;
+
+	@Before
+	public void setUp() {
+		random = new Random(7);
+	}
+
+	private double[] randomMatrix(int size) {
+		double[] matrix = new double[size];
+		for(int i = 0; i < size; i++) {
+			matrix[i] = random.nextGaussian();
+		}
+		return matrix;
+	}
+
+	private double[] naiveMultiply(double[] a, double[] b, int mMax, int nMax, int qMax) {
+		double[] c = new double[mMax*qMax];
+		for(int m = 0; m < mMax; m++) {
+			for(int q = 0; q < qMax; q++) {
+				double sum = 0;
+				for(int p = 0; p < nMax; p++) {
+					sum += a[m*nMax+p]*b[p*qMax+q];
+				}
+				c[m*qMax+q] = sum;
+			}
+		}
+		return c;
+	}
+
+	@Test
+	public void givenDictionaryShapes() {
+		final int[][] SHAPES = new int[][] {{160, 32, 32}, {160, 32, 160}, {32, 160, 32}, {37, 13, 29}, {1, 5, 1}};
+		for(int[] shape : SHAPES) {
+			double[] a = randomMatrix(shape[0]*shape[1]);
+			double[] b = randomMatrix(shape[1]*shape[2]);
+			double[] expected = naiveMultiply(a, b, shape[0], shape[1], shape[2]);
+			assertArrayEquals(expected, Gemm.multiply(a, b, shape[0], shape[1], shape[2]), NO_MARGIN);
+		}
+	}
+
+	@Test
+	public void givenSubBlocks() {
+		final int STRIDE = 20;
+		double[] a = randomMatrix(STRIDE*STRIDE);
+		double[] b = randomMatrix(STRIDE*STRIDE);
+		double[] c = new double[STRIDE*STRIDE];
+		//rows 2-8 of a by columns 3-12 of b, into the middle of c
+		Gemm.multiply(7, 9, 10, a, 2*STRIDE+1, STRIDE, b, 1*STRIDE+3, STRIDE, c, 5*STRIDE+5, STRIDE);
+
+		for(int m = 0; m < 7; m++) {
+			for(int q = 0; q < 10; q++) {
+				double sum = 0;
+				for(int p = 0; p < 9; p++) {
+					sum += a[(2+m)*STRIDE+1+p]*b[(1+p)*STRIDE+3+q];
+				}
+				assertEquals(sum, c[(5+m)*STRIDE+5+q], NO_MARGIN);
+			}
+		}
+		assertEquals(0, c[5*STRIDE+4], NO_MARGIN);
+		assertEquals(0, c[5*STRIDE+15], NO_MARGIN);
+	}
+
+	@Test
+	public void givenMatrices() throws BadDimensionsException {
+		double[] a = randomMatrix(6*4);
+		double[] b = randomMatrix(4*5);
+		Matrix result = Matrix.multiply(new Matrix(4, a), new Matrix(5, b));
+
+		assertEquals(6, result.getHeight());
+		assertEquals(5, result.getWidth());
+		assertArrayEquals(naiveMultiply(a, b, 6, 4, 5), result.to1DArray(), NO_MARGIN);
+	}
+
+	@Test(expected=BadDimensionsException.class)
+	public void givenIncompatibleMatrices() throws BadDimensionsException {
+		Matrix.multiply(new Matrix(4, randomMatrix(8)), new Matrix(4, randomMatrix(8)));
+	}
+
+	@Test
+	public void givenTransposedViews() throws BadDimensionsException {
+		double[] a = randomMatrix(6*4);
+		double[] b = randomMatrix(5*6);
+		double[] c = new double[4*5];
+		//(4x6)(6x5) from a stored as 6x4 and b stored as 5x6
+		Gemm.multiply(MatrixView.of(a, 4, 6).transpose(), MatrixView.of(b, 6, 5).transpose(), MatrixView.of(c, 5, 4));
+
+		double[] expected = naiveMultiply(MatrixView.of(a, 4, 6).transpose().toArray(), 
+				MatrixView.of(b, 6, 5).transpose().toArray(), 4, 6, 5);
+		assertArrayEquals(expected, c, NO_MARGIN);
+	}
+
+	@Test
+	public void givenViewsSharingStorage() throws BadDimensionsException {
+		double[] data = randomMatrix(8*8);
+		MatrixView view = MatrixView.of(data, 8, 8);
+		MatrixView block = view.subBlock(2, 3, 4, 2);
+		MatrixView transposed = view.transpose();
+
+		assertEquals(data[3*8+2], block.get(0, 0), NO_MARGIN);
+		assertEquals(data[2*8+5], transposed.get(2, 5), NO_MARGIN);
+		assertEquals(data[1*8+6], view.col(6).get(0, 1), NO_MARGIN);
+		assertEquals(view.row(4).innerProduct(view.row(4)), transposed.col(4).innerProduct(transposed.col(4)), NO_MARGIN);
+
+		block.subtract(block);
+		assertEquals(0, data[4*8+5], NO_MARGIN);
+	}
+
+	@Test
+	public void givenTransposedBasicMatrix() throws BadDimensionsException {
+		double[] a = randomMatrix(3*5);
+		BasicMatrix matrix = new BasicMatrix(5, a.clone());
+		matrix.transpose();
+
+		assertEquals(3, matrix.getWidth());
+		assertEquals(a[2*5+4], matrix.get(2, 4), NO_MARGIN);
+		BasicMatrix product = BasicMatrix.multiply(matrix, new BasicMatrix(5, a));
+		assertEquals(5, product.getHeight());
+		assertEquals(5, product.getWidth());
+		assertArrayEquals(naiveMultiply(matrix.view().toArray(), a, 5, 3, 5), product.to1DArray(), NO_MARGIN);
+	}
+
+	@Test(expected=BadDimensionsException.class)
+	public void givenBlockOutsideView() throws BadDimensionsException {
+		MatrixView.of(new double[16], 4, 4).subBlock(2, 2, 3, 1);
+	}
+
+	@Test
+	public void givenDestinationArrays() throws BadDimensionsException {
+		double[] a = randomMatrix(3*4);
+		double[] transposed = new double[3*4];
+		Matrix.transpose(a, 3, 4, transposed);
+		assertArrayEquals(Matrix.transpose(a, 3, 4), transposed, NO_MARGIN);
+		assertArrayEquals(MatrixView.of(a, 4, 3).transpose().toArray(), transposed, NO_MARGIN);
+
+		double[] v1 = randomMatrix(4), v2 = randomMatrix(4);
+		double[] product = new double[16];
+		Matrix.kronecker(v1, v2, product);
+		assertArrayEquals(Matrix.kronecker(v1, v2), product, NO_MARGIN);
+		assertEquals(v1[2]*v2[3], product[2*4+3], NO_MARGIN);
+	}
+
+	@Test(expected=BadDimensionsException.class)
+	public void givenSmallDestination() throws BadDimensionsException {
+		Matrix.kronecker(randomMatrix(4), randomMatrix(4), new double[15]);
+	}
+
+	@Test
+	public void givenPooledBuffers() {
+		BufferPool pool = new BufferPool();
+		double[] buffer = pool.acquire(100);
+		assertEquals(128, buffer.length);
+		pool.release(buffer);
+		assertSame(buffer, pool.acquire(65));
+		assertNotSame(buffer, pool.acquire(128));
+		assertEquals(1, pool.acquire(0).length);
+
+		double[] unpooled = new double[100];
+		pool.release(unpooled);
+		assertNotSame(unpooled, pool.acquire(100));
+	}
+}
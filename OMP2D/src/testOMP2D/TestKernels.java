@@ -0,0 +1,126 @@
+package testOMP2D;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import OMP2D.Kernels;
+import OMP2D.ScalarKernels;
+
+public class TestKernels {
+	private final int[] LENGTHS = new int[] {0, 1, 3, 7, 8, 16, 33, 40, 160, 1023};
+	private final int OFFSET = 5;
+	private final double SUM_MARGIN = 1e-12;
+
+	private final Kernels scalar = ScalarKernels.INSTANCE;
+	private Kernels vector;
+	private Random random;
+
+	@Before
+	public void setUp() {
+		vector = Kernels.vector();
+		assumeTrue(vector != null);
+		random = new Random(42);
+	}
+
+	private double[] randomVector(int length) {
+		double[] v = new double[length];
+		for(int i = 0; i < length; i++) {
+			v[i] = 2*random.nextDouble() - 1;
+		}
+		return v;
+	}
+
+	@Test
+	public void dotMatchesScalar() {
+		for(int length : LENGTHS) {
+			double[] v1 = randomVector(length + OFFSET);
+			double[] v2 = randomVector(length + 2*OFFSET);
+			double expected = scalar.dot(v1, OFFSET, v2, 2*OFFSET, length);
+			double actual = vector.dot(v1, OFFSET, v2, 2*OFFSET, length);
+			assertEquals(expected, actual, SUM_MARGIN*Math.max(1, length));
+		}
+	}
+
+	@Test
+	public void dotAndNormMatchesDot() {
+		double[] result = new double[2];
+		for(int length : LENGTHS) {
+			double[] v1 = randomVector(length + OFFSET);
+			double[] v2 = randomVector(length);
+			vector.dotAndNorm(v1, OFFSET, v2, 0, length, result);
+			assertEquals(vector.dot(v1, OFFSET, v2, 0, length), result[0], 0.0);
+			assertEquals(scalar.dot(v2, 0, v2, 0, length), result[1], SUM_MARGIN*Math.max(1, length));
+			
+			scalar.dotAndNorm(v1, OFFSET, v2, 0, length, result);
+			assertEquals(scalar.dot(v1, OFFSET, v2, 0, length), result[0], 0.0);
+			assertEquals(scalar.dot(v2, 0, v2, 0, length), result[1], 0.0);
+		}
+	}
+	
+	@Test
+	public void axpyMatchesScalar() {
+		for(int length : LENGTHS) {
+			double[] x = randomVector(length + OFFSET);
+			double[] y = randomVector(length + OFFSET);
+			double[] expected = y.clone();
+			scalar.axpy(-0.75, x, OFFSET, expected, 0, length);
+			vector.axpy(-0.75, x, OFFSET, y, 0, length);
+			assertArrayEquals(expected, y, SUM_MARGIN);
+		}
+	}
+
+	@Test
+	public void axpyBetweenRowsOfOneArray() {
+		final int width = 40;
+		double[] rows = randomVector(2*width);
+		double[] expected = rows.clone();
+		scalar.axpy(0.5, expected, 0, expected, width, width);
+		vector.axpy(0.5, rows, 0, rows, width, width);
+		assertArrayEquals(expected, rows, SUM_MARGIN);
+	}
+
+	@Test
+	public void scaleMatchesScalar() {
+		for(int length : LENGTHS) {
+			double[] v = randomVector(length + OFFSET);
+			double[] expected = v.clone();
+			scalar.scale(expected, OFFSET, length, 3.25);
+			vector.scale(v, OFFSET, length, 3.25);
+			assertArrayEquals(expected, v, 0.0);
+		}
+	}
+
+	@Test
+	public void scaleIntoMatchesScalar() {
+		for(int length : LENGTHS) {
+			double[] x = randomVector(length + OFFSET);
+			double[] expected = new double[length];
+			double[] actual = new double[length];
+			scalar.scaleInto(-1.5, x, OFFSET, expected, 0, length);
+			vector.scaleInto(-1.5, x, OFFSET, actual, 0, length);
+			assertArrayEquals(expected, actual, 0.0);
+		}
+	}
+
+	@Test
+	public void maxAbsMatchesScalar() {
+		for(int length : LENGTHS) {
+			double[] v = randomVector(length + OFFSET);
+			assertEquals(scalar.maxAbs(v, OFFSET, length), vector.maxAbs(v, OFFSET, length), 0.0);
+			assertEquals(scalar.indexOfMaxAbs(v, OFFSET, length), vector.indexOfMaxAbs(v, OFFSET, length));
+		}
+	}
+
+	@Test
+	public void indexOfMaxAbsPicksFirstTie() {
+		double[] v = new double[] {0.5, -2, 1, 2, -2, 0, 0, 0, 0, 2, 0, 0, 0, 0, 0, 0, 0, -2};
+		assertEquals(1, scalar.indexOfMaxAbs(v, 0, v.length));
+		assertEquals(1, vector.indexOfMaxAbs(v, 0, v.length));
+		assertEquals(1, vector.indexOfMaxAbs(v, 2, v.length-2));
+	}
+}
@@ -1,13 +1,40 @@
 package testOMP2D;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
 import org.junit.Before;
 import org.junit.Test;
 
 import static org.junit.Assert.*;
 import OMP2D.CleverPointer;
 import OMP2D.Matrix;
+import OMP2D.MixedPrecisionCorrelation;
 import OMP2D.BadDimensionsException;
+import OMP2D.BatchOMP2D;
+import OMP2D.BlockBatch;
+import OMP2D.BlockKernels;
+import OMP2D.BlockParallelism;
+import OMP2D.AtomBudgetTermination;
+import OMP2D.CholeskyOMP2D;
+import OMP2D.CompositeTermination;
+import OMP2D.DenseCorrelation;
+import OMP2D.FloatOMP2D;
+import OMP2D.GeneralizedSelector;
+import OMP2D.GramCorrelation;
+import OMP2D.Kernels;
 import OMP2D.OMP2D;
+import OMP2D.OMP2DWorkspace;
+import OMP2D.ScalarKernels;
+import OMP2D.SparseBlockCode;
+import OMP2D.SparseDecoder;
+import OMP2D.RelativeImprovementTermination;
+import OMP2D.StagnationTermination;
+import OMP2D.Termination;
+import OMP2D.TransformCorrelation;
 
 public class TestOMP2D {
 	private final int WIDTH_8 = 8;
@@ -23,6 +50,11 @@ public class TestOMP2D {
 	private final double POOR_PSNR = 40.0;
 	
 	private final double NO_MARGIN = 0.0;
+	//the vector kernels reorder inner products, so only the scalar kernels reproduce the sample exactly
+	private final double KERNEL_MARGIN = Kernels.get() instanceof ScalarKernels ? NO_MARGIN : 1e-12;
+	private final double ROUNDING_MARGIN = 1e-9;
+	private final double COEFFICIENT_MARGIN = 1e-8;
+	private final double FLOAT_PSNR_MARGIN = 0.01;
 	private final double TINY_MARGIN = 1.0;
 	private final double SMALL_MARGIN = 3.0;
 	private final double BIG_MARGIN = 5.0;
@@ -155,7 +187,490 @@ public class TestOMP2D {
 		blockProcessor.calcBlock();
 		
 		final double psnr = blockProcessor.getPSNR();
-		assertEquals(SAMPLE_PSNR, psnr, NO_MARGIN);
+		assertEquals(SAMPLE_PSNR, psnr, ROUNDING_MARGIN);
+	}
+	
+	@Test
+	public void givenSampleBlockWithFullReorthogonalization() throws BadDimensionsException {
+		final double TOLERANCE = (MAX_INTENSITY*MAX_INTENSITY)/(Math.pow(10, (PSS/10.0)));
+		final int MAX_ITERATIONS = WIDTH_16*WIDTH_16;
+		
+		//two passes for every atom, as the solver always made before they became adaptive
+		OMP2D blockProcessor = new OMP2D(SAMPLE_DATA, WIDTH_16, 1, TOLERANCE, MAX_ITERATIONS);
+		blockProcessor.setReorthogonalizationThreshold(1);
+		blockProcessor.calcBlock();
+		
+		OMP2D singlePass = new OMP2D(SAMPLE_DATA, WIDTH_16, 1, TOLERANCE, MAX_ITERATIONS);
+		singlePass.setReorthogonalizationThreshold(0);
+		singlePass.calcBlock();
+		
+		OMP2D adaptive = new OMP2D(SAMPLE_DATA, WIDTH_16, 1, TOLERANCE, MAX_ITERATIONS);
+		adaptive.calcBlock();
+		
+		assertEquals(SAMPLE_PSNR, blockProcessor.getPSNR(), KERNEL_MARGIN);
+		assertEquals(blockProcessor.getOrthogonalizations(), blockProcessor.getReorthogonalizations());
+		assertEquals(0, singlePass.getReorthogonalizations());
+		assertEquals(SAMPLE_PSNR, singlePass.getPSNR(), ROUNDING_MARGIN);
+		assertEquals(blockProcessor.getNumCoefficients() - 1, adaptive.getOrthogonalizations(), NO_MARGIN);
+		assertTrue(adaptive.getReorthogonalizations() < adaptive.getOrthogonalizations());
+	}
+	
+	@Test
+	public void givenSampleBlockWithResidualCheck() throws BadDimensionsException {
+		final double TOLERANCE = (MAX_INTENSITY*MAX_INTENSITY)/(Math.pow(10, (PSS/10.0)));
+		final int MAX_ITERATIONS = WIDTH_16*WIDTH_16;
+		
+		OMP2D blockProcessor = new OMP2D(SAMPLE_DATA, WIDTH_16, 1, TOLERANCE, MAX_ITERATIONS);
+		blockProcessor.setDebug(true);
+		blockProcessor.calcBlock();
+		
+		assertEquals(SAMPLE_PSNR, blockProcessor.getPSNR(), ROUNDING_MARGIN);
+	}
+	
+	@Test
+	public void givenSampleBlockWithAtomBudget() throws BadDimensionsException {
+		final double TOLERANCE = (MAX_INTENSITY*MAX_INTENSITY)/(Math.pow(10, (PSS/10.0)));
+		final int MAX_ITERATIONS = WIDTH_16*WIDTH_16;
+		
+		OMP2D full = new OMP2D(SAMPLE_DATA, WIDTH_16, 1, TOLERANCE, MAX_ITERATIONS);
+		full.calcBlock();
+		
+		OMP2D blockProcessor = new OMP2D(SAMPLE_DATA, WIDTH_16, 1, TOLERANCE, MAX_ITERATIONS);
+		blockProcessor.setTerminationPolicy(new CompositeTermination(
+				new StagnationTermination(8, 0), new AtomBudgetTermination(10)));
+		blockProcessor.calcBlock();
+		
+		assertEquals(Termination.TOLERANCE, full.getTermination());
+		assertEquals(Termination.ATOM_BUDGET, blockProcessor.getTermination());
+		assertEquals(10, blockProcessor.getNumCoefficients(), NO_MARGIN);
+		assertTrue(blockProcessor.getPSNR() < full.getPSNR());
+	}
+	
+	@Test
+	public void givenSampleBlockWithStagnation() throws BadDimensionsException {
+		final double TOLERANCE = (MAX_INTENSITY*MAX_INTENSITY)/(Math.pow(10, (PSS/10.0)));
+		final int MAX_ITERATIONS = WIDTH_16*WIDTH_16;
+		
+		OMP2D blockProcessor = new OMP2D(SAMPLE_DATA, WIDTH_16, 1, TOLERANCE, MAX_ITERATIONS);
+		blockProcessor.setTerminationPolicy(new StagnationTermination(4, 100));
+		blockProcessor.calcBlock();
+		
+		assertEquals(Termination.STAGNATION, blockProcessor.getTermination());
+		assertEquals(4, blockProcessor.getNumCoefficients(), NO_MARGIN);
+	}
+	
+	@Test
+	public void givenPoliciesWithMultipleAtomsPerIteration() throws BadDimensionsException {
+		final double TOLERANCE = (MAX_INTENSITY*MAX_INTENSITY)/(Math.pow(10, (PSS/10.0)));
+		final int MAX_ITERATIONS = WIDTH_8*WIDTH_8;
+		double[] noise = new double[WIDTH_8*WIDTH_8];
+		Random random = new Random(3);
+		for(int i = 0; i < noise.length; i++) {
+			noise[i] = random.nextInt(256);
+		}
+		
+		OMP2D full = new OMP2D(noise, WIDTH_8, 1, TOLERANCE, MAX_ITERATIONS);
+		full.setAtomSelector(new GeneralizedSelector(4));
+		full.calcBlock();
+		
+		//leaves the energies of a long run in the workspace
+		OMP2D earlier = new OMP2D(EXTREME_DATA_8, WIDTH_8, 1, TOLERANCE, MAX_ITERATIONS);
+		earlier.calcBlock();
+		
+		OMP2D improvement = new OMP2D(noise, WIDTH_8, 1, TOLERANCE, MAX_ITERATIONS);
+		improvement.setAtomSelector(new GeneralizedSelector(4));
+		improvement.setTerminationPolicy(new RelativeImprovementTermination(0.001));
+		improvement.calcBlock();
+		
+		//the second iteration removes about a third of the energy left by the first
+		OMP2D slowImprovement = new OMP2D(noise, WIDTH_8, 1, TOLERANCE, MAX_ITERATIONS);
+		slowImprovement.setAtomSelector(new GeneralizedSelector(4));
+		slowImprovement.setTerminationPolicy(new RelativeImprovementTermination(0.5));
+		slowImprovement.calcBlock();
+		
+		OMP2D stagnation = new OMP2D(noise, WIDTH_8, 1, TOLERANCE, MAX_ITERATIONS);
+		stagnation.setAtomSelector(new GeneralizedSelector(4));
+		stagnation.setTerminationPolicy(new StagnationTermination(6, 0.01));
+		stagnation.calcBlock();
+		
+		//the last iteration may only fill what is left of a budget of 4 atoms per iteration
+		OMP2D budget = new OMP2D(noise, WIDTH_8, 1, TOLERANCE, MAX_ITERATIONS);
+		budget.setAtomSelector(new GeneralizedSelector(4));
+		budget.setTerminationPolicy(new CompositeTermination(
+				new StagnationTermination(8, 0), new AtomBudgetTermination(10)));
+		budget.calcBlock();
+		
+		assertEquals(Termination.TOLERANCE, full.getTermination());
+		assertEquals(Termination.TOLERANCE, improvement.getTermination());
+		assertEquals(full.getNumCoefficients(), improvement.getNumCoefficients(), NO_MARGIN);
+		assertEquals(Termination.RELATIVE_IMPROVEMENT, slowImprovement.getTermination());
+		assertEquals(8, slowImprovement.getNumCoefficients(), NO_MARGIN);
+		assertEquals(Termination.TOLERANCE, stagnation.getTermination());
+		assertEquals(full.getNumCoefficients(), stagnation.getNumCoefficients(), NO_MARGIN);
+		assertEquals(Termination.ATOM_BUDGET, budget.getTermination());
+		assertEquals(10, budget.getNumCoefficients(), NO_MARGIN);
+	}
+	
+	@Test
+	public void givenSampleBlockWithGramCorrelation() throws BadDimensionsException {
+		final double TOLERANCE = (MAX_INTENSITY*MAX_INTENSITY)/(Math.pow(10, (PSS/10.0)));
+		final int MAX_ITERATIONS = WIDTH_16*WIDTH_16;
+		
+		OMP2D dense = new OMP2D(SAMPLE_DATA, WIDTH_16, 1, TOLERANCE, MAX_ITERATIONS);
+		dense.calcBlock();
+		
+		OMP2D blockProcessor = new OMP2D(SAMPLE_DATA, WIDTH_16, 1, TOLERANCE, MAX_ITERATIONS);
+		blockProcessor.setCorrelationEngine(new GramCorrelation());
+		blockProcessor.calcBlock();
+		
+		assertEquals(dense.getNumCoefficients(), blockProcessor.getNumCoefficients(), NO_MARGIN);
+		assertEquals(SAMPLE_PSNR, blockProcessor.getPSNR(), ROUNDING_MARGIN);
+	}
+	
+	@Test
+	public void givenNoisyBlockWithGramCorrelation() throws BadDimensionsException {
+		final double TOLERANCE = (MAX_INTENSITY*MAX_INTENSITY)/(Math.pow(10, (PSS/10.0)));
+		final int MAX_ITERATIONS = WIDTH_8*WIDTH_8;
+		double[] noise = new double[WIDTH_8*WIDTH_8];
+		Random random = new Random(3);
+		for(int i = 0; i < noise.length; i++) {
+			noise[i] = random.nextInt(256);
+		}
+		
+		OMP2D dense = new OMP2D(noise, WIDTH_8, 1, TOLERANCE, MAX_ITERATIONS);
+		dense.calcBlock();
+		
+		//runs well past the atoms where the dense products become cheaper than the updates
+		OMP2D blockProcessor = new OMP2D(noise, WIDTH_8, 1, TOLERANCE, MAX_ITERATIONS);
+		blockProcessor.setCorrelationEngine(new GramCorrelation());
+		blockProcessor.calcBlock();
+		
+		assertTrue(dense.getNumCoefficients() > 2*WIDTH_8);
+		assertEquals(dense.getNumCoefficients(), blockProcessor.getNumCoefficients(), NO_MARGIN);
+		assertArrayEquals(dense.getApproxData(), blockProcessor.getApproxData(), ROUNDING_MARGIN);
+	}
+	
+	@Test
+	public void givenSampleBlockWithTransformCorrelation() throws BadDimensionsException {
+		final double TOLERANCE = (MAX_INTENSITY*MAX_INTENSITY)/(Math.pow(10, (PSS/10.0)));
+		final int MAX_ITERATIONS = WIDTH_16*WIDTH_16;
+		
+		OMP2D dense = new OMP2D(SAMPLE_DATA, WIDTH_16, 1, TOLERANCE, MAX_ITERATIONS);
+		dense.calcBlock();
+		
+		OMP2D blockProcessor = new OMP2D(SAMPLE_DATA, WIDTH_16, 1, TOLERANCE, MAX_ITERATIONS);
+		blockProcessor.setCorrelationEngine(TransformCorrelation.INSTANCE);
+		blockProcessor.calcBlock();
+		
+		assertEquals(SAMPLE_PSNR, blockProcessor.getPSNR(), ROUNDING_MARGIN);
+		assertArrayEquals(dense.getCoefficients(), blockProcessor.getCoefficients(), COEFFICIENT_MARGIN);
+		assertArrayEquals(dense.getApproxData(), blockProcessor.getApproxData(), ROUNDING_MARGIN);
+	}
+	
+	@Test
+	public void givenExtreme8BlockWithTransformCorrelation() throws BadDimensionsException {
+		final double TOLERANCE = (MAX_INTENSITY*MAX_INTENSITY)/(Math.pow(10, (PSS/10.0)));
+		final int MAX_ITERATIONS = WIDTH_8*WIDTH_8;
+		
+		OMP2D dense = new OMP2D(EXTREME_DATA_8, WIDTH_8, 1, TOLERANCE, MAX_ITERATIONS);
+		dense.calcBlock();
+		
+		OMP2D blockProcessor = new OMP2D(EXTREME_DATA_8, WIDTH_8, 1, TOLERANCE, MAX_ITERATIONS);
+		blockProcessor.setCorrelationEngine(TransformCorrelation.INSTANCE);
+		blockProcessor.calcBlock();
+		
+		assertArrayEquals(dense.getCoefficients(), blockProcessor.getCoefficients(), COEFFICIENT_MARGIN);
+		assertArrayEquals(dense.getApproxData(), blockProcessor.getApproxData(), ROUNDING_MARGIN);
+	}
+	
+	@Test
+	public void givenSampleBlockWithCholesky() throws BadDimensionsException {
+		final double TOLERANCE = (MAX_INTENSITY*MAX_INTENSITY)/(Math.pow(10, (PSS/10.0)));
+		final int MAX_ITERATIONS = WIDTH_16*WIDTH_16;
+		
+		OMP2D gramSchmidt = new OMP2D(SAMPLE_DATA, WIDTH_16, 1, TOLERANCE, MAX_ITERATIONS);
+		gramSchmidt.calcBlock();
+		
+		CholeskyOMP2D blockProcessor = new CholeskyOMP2D(SAMPLE_DATA, WIDTH_16, 1, TOLERANCE, MAX_ITERATIONS);
+		blockProcessor.calcBlock();
+		
+		assertEquals(SAMPLE_PSNR, blockProcessor.getPSNR(), ROUNDING_MARGIN);
+		assertArrayEquals(gramSchmidt.getCoefficients(), blockProcessor.getCoefficients(), COEFFICIENT_MARGIN);
+		assertArrayEquals(gramSchmidt.getApproxData(), blockProcessor.getApproxData(), ROUNDING_MARGIN);
+	}
+	
+	@Test
+	public void givenSampleBlockWithBatchOMP() throws BadDimensionsException {
+		final double TOLERANCE = (MAX_INTENSITY*MAX_INTENSITY)/(Math.pow(10, (PSS/10.0)));
+		final int MAX_ITERATIONS = WIDTH_16*WIDTH_16;
+		
+		OMP2D gramSchmidt = new OMP2D(SAMPLE_DATA, WIDTH_16, 1, TOLERANCE, MAX_ITERATIONS);
+		gramSchmidt.calcBlock();
+		
+		BatchOMP2D blockProcessor = new BatchOMP2D(SAMPLE_DATA, WIDTH_16, 1, TOLERANCE, MAX_ITERATIONS);
+		blockProcessor.calcBlock();
+		
+		assertEquals(SAMPLE_PSNR, blockProcessor.getPSNR(), ROUNDING_MARGIN);
+		assertArrayEquals(gramSchmidt.getCoefficients(), blockProcessor.getCoefficients(), COEFFICIENT_MARGIN);
+		assertArrayEquals(gramSchmidt.getApproxData(), blockProcessor.getApproxData(), ROUNDING_MARGIN);
+	}
+	
+	@Test
+	public void givenSampleBlockWithGeneralizedSelection() throws BadDimensionsException {
+		final double TOLERANCE = (MAX_INTENSITY*MAX_INTENSITY)/(Math.pow(10, (PSS/10.0)));
+		final int MAX_ITERATIONS = WIDTH_16*WIDTH_16;
+		
+		OMP2D gramSchmidt = new OMP2D(SAMPLE_DATA, WIDTH_16, 1, TOLERANCE, MAX_ITERATIONS);
+		gramSchmidt.setAtomSelector(new GeneralizedSelector(4));
+		gramSchmidt.calcBlock();
+		
+		OMP2D incremental = new OMP2D(SAMPLE_DATA, WIDTH_16, 1, TOLERANCE, MAX_ITERATIONS);
+		incremental.setAtomSelector(new GeneralizedSelector(4));
+		incremental.setCorrelationEngine(new GramCorrelation());
+		incremental.calcBlock();
+		
+		BatchOMP2D blockProcessor = new BatchOMP2D(SAMPLE_DATA, WIDTH_16, 1, TOLERANCE, MAX_ITERATIONS);
+		blockProcessor.setAtomSelector(new GeneralizedSelector(4));
+		blockProcessor.calcBlock();
+		
+		assertTrue(gramSchmidt.getPSNR() > PSS);
+		assertArrayEquals(gramSchmidt.getCoefficients(), incremental.getCoefficients(), COEFFICIENT_MARGIN);
+		assertArrayEquals(gramSchmidt.getCoefficients(), blockProcessor.getCoefficients(), COEFFICIENT_MARGIN);
+		assertArrayEquals(gramSchmidt.getApproxData(), blockProcessor.getApproxData(), ROUNDING_MARGIN);
+	}
+	
+	@Test
+	public void givenSampleBlockInFloat() throws BadDimensionsException {
+		final double TOLERANCE = (MAX_INTENSITY*MAX_INTENSITY)/(Math.pow(10, (PSS/10.0)));
+		final int MAX_ITERATIONS = WIDTH_16*WIDTH_16;
+		
+		FloatOMP2D blockProcessor = new FloatOMP2D(SAMPLE_DATA, WIDTH_16, 1, TOLERANCE, MAX_ITERATIONS);
+		blockProcessor.setDebug(true);
+		blockProcessor.calcBlock();
+		
+		FloatOMP2D compensated = new FloatOMP2D(SAMPLE_DATA, WIDTH_16, 1, TOLERANCE, MAX_ITERATIONS);
+		compensated.setCompensatedSummation(true);
+		compensated.calcBlock();
+		
+		assertEquals(SAMPLE_PSNR, blockProcessor.getPSNR(), FLOAT_PSNR_MARGIN);
+		assertEquals(SAMPLE_PSNR, compensated.getPSNR(), FLOAT_PSNR_MARGIN);
+	}
+	
+	@Test
+	public void givenSampleBlockInMixedPrecision() throws BadDimensionsException {
+		final double TOLERANCE = (MAX_INTENSITY*MAX_INTENSITY)/(Math.pow(10, (PSS/10.0)));
+		final int MAX_ITERATIONS = WIDTH_16*WIDTH_16;
+		
+		OMP2D dense = new OMP2D(SAMPLE_DATA, WIDTH_16, 1, TOLERANCE, MAX_ITERATIONS);
+		dense.calcBlock();
+		
+		OMP2D blockProcessor = new OMP2D(SAMPLE_DATA, WIDTH_16, 1, TOLERANCE, MAX_ITERATIONS);
+		blockProcessor.setCorrelationEngine(MixedPrecisionCorrelation.INSTANCE);
+		blockProcessor.calcBlock();
+		
+		assertEquals(SAMPLE_PSNR, blockProcessor.getPSNR(), ROUNDING_MARGIN);
+		assertArrayEquals(dense.getCoefficients(), blockProcessor.getCoefficients(), NO_MARGIN);
+	}
+	
+	@Test
+	public void givenSampleBlockInParallel() throws BadDimensionsException {
+		final double TOLERANCE = (MAX_INTENSITY*MAX_INTENSITY)/(Math.pow(10, (PSS/10.0)));
+		final int MAX_ITERATIONS = WIDTH_16*WIDTH_16;
+		
+		OMP2D sequential = new OMP2D(SAMPLE_DATA, WIDTH_16, 1, TOLERANCE, MAX_ITERATIONS);
+		sequential.calcBlock();
+		
+		//a threshold of zero splits every loop
+		OMP2D blockProcessor = new OMP2D(SAMPLE_DATA, WIDTH_16, 1, TOLERANCE, MAX_ITERATIONS);
+		blockProcessor.setParallelism(new BlockParallelism(new ForkJoinPool(4), 0));
+		blockProcessor.calcBlock();
+		
+		OMP2D twoThreads = new OMP2D(SAMPLE_DATA, WIDTH_16, 1, TOLERANCE, MAX_ITERATIONS);
+		twoThreads.setParallelism(new BlockParallelism(new ForkJoinPool(2), 0));
+		twoThreads.calcBlock();
+		
+		assertEquals(sequential.getNumCoefficients(), blockProcessor.getNumCoefficients(), NO_MARGIN);
+		assertEquals(SAMPLE_PSNR, blockProcessor.getPSNR(), ROUNDING_MARGIN);
+		assertArrayEquals(blockProcessor.getApproxData(), twoThreads.getApproxData(), NO_MARGIN);
+	}
+	
+	@Test
+	public void givenSampleBlockWithParallelSearch() throws BadDimensionsException {
+		final double TOLERANCE = (MAX_INTENSITY*MAX_INTENSITY)/(Math.pow(10, (PSS/10.0)));
+		final int MAX_ITERATIONS = WIDTH_16*WIDTH_16;
+		final BlockParallelism PARALLELISM = new BlockParallelism(new ForkJoinPool(4), 0);
+		
+		//Cholesky only splits the search, which picks the same atoms as the sequential one
+		CholeskyOMP2D sequential = new CholeskyOMP2D(SAMPLE_DATA, WIDTH_16, 1, TOLERANCE, MAX_ITERATIONS);
+		sequential.calcBlock();
+		
+		CholeskyOMP2D blockProcessor = new CholeskyOMP2D(SAMPLE_DATA, WIDTH_16, 1, TOLERANCE, MAX_ITERATIONS);
+		blockProcessor.setParallelism(PARALLELISM);
+		blockProcessor.calcBlock();
+		
+		CholeskyOMP2D generalized = new CholeskyOMP2D(SAMPLE_DATA, WIDTH_16, 1, TOLERANCE, MAX_ITERATIONS);
+		generalized.setAtomSelector(new GeneralizedSelector(4));
+		generalized.calcBlock();
+		
+		CholeskyOMP2D parallelGeneralized = new CholeskyOMP2D(SAMPLE_DATA, WIDTH_16, 1, TOLERANCE, MAX_ITERATIONS);
+		parallelGeneralized.setAtomSelector(new GeneralizedSelector(4));
+		parallelGeneralized.setParallelism(PARALLELISM);
+		parallelGeneralized.calcBlock();
+		
+		CholeskyOMP2D flat = new CholeskyOMP2D(FLAT_DATA_32, WIDTH_32, 1, TOLERANCE, MAX_ITERATIONS);
+		flat.setParallelism(PARALLELISM);
+		flat.calcBlock();
+		
+		assertArrayEquals(sequential.getCoefficients(), blockProcessor.getCoefficients(), NO_MARGIN);
+		assertArrayEquals(sequential.getApproxData(), blockProcessor.getApproxData(), NO_MARGIN);
+		assertArrayEquals(generalized.getCoefficients(), parallelGeneralized.getCoefficients(), NO_MARGIN);
+		assertEquals(1, flat.getNumCoefficients(), NO_MARGIN);
+	}
+	
+	@Test
+	public void givenBatchOfBlocks() throws BadDimensionsException {
+		final double TOLERANCE = (MAX_INTENSITY*MAX_INTENSITY)/(Math.pow(10, (PSS/10.0)));
+		final int MAX_ITERATIONS = WIDTH_16*WIDTH_16;
+		final double[][] BLOCKS = new double[][] {SAMPLE_DATA, FLAT_DATA_16, SAMPLE_DATA, SAMPLE_DATA_OUTPUT};
+		
+		List<OMP2D> batch = new ArrayList<OMP2D>();
+		for(int b = 0; b < BLOCKS.length; b++) {
+			//the blocks finish at different iterations, so the batch is refilled as they do
+			batch.add(new OMP2D(BLOCKS[b], WIDTH_16, b, TOLERANCE*(b+1), MAX_ITERATIONS));
+		}
+		new BlockBatch(batch, 2).calcBlocks();
+		
+		for(int b = 0; b < BLOCKS.length; b++) {
+			OMP2D alone = new OMP2D(BLOCKS[b], WIDTH_16, b, TOLERANCE*(b+1), MAX_ITERATIONS);
+			alone.calcBlock();
+			assertEquals(alone.getTermination(), batch.get(b).getTermination());
+			assertArrayEquals(alone.getCoefficients(), batch.get(b).getCoefficients(), NO_MARGIN);
+			assertArrayEquals(alone.getApproxData(), batch.get(b).getApproxData(), NO_MARGIN);
+		}
+	}
+	
+	@Test(expected=BadDimensionsException.class)
+	public void givenBatchOfMixedWidths() throws BadDimensionsException {
+		List<OMP2D> batch = new ArrayList<OMP2D>();
+		batch.add(new OMP2D(FLAT_DATA_8, WIDTH_8, 0, 1, 1));
+		batch.add(new OMP2D(FLAT_DATA_16, WIDTH_16, 1, 1, 1));
+		new BlockBatch(batch);
+	}
+	
+	@Test
+	public void givenSampleBlockForApproximationOnly() throws BadDimensionsException {
+		final double TOLERANCE = (MAX_INTENSITY*MAX_INTENSITY)/(Math.pow(10, (PSS/10.0)));
+		final int MAX_ITERATIONS = WIDTH_16*WIDTH_16;
+		
+		OMP2D full = new OMP2D(SAMPLE_DATA, WIDTH_16, 1, TOLERANCE, MAX_ITERATIONS);
+		full.calcBlock();
+		
+		OMP2D blockProcessor = new OMP2D(SAMPLE_DATA, WIDTH_16, 1, TOLERANCE, MAX_ITERATIONS);
+		blockProcessor.setApproximationOnly(true);
+		blockProcessor.calcBlock();
+		
+		assertEquals(SAMPLE_PSNR, blockProcessor.getPSNR(), ROUNDING_MARGIN);
+		assertEquals(full.getNumCoefficients(), blockProcessor.getNumCoefficients(), NO_MARGIN);
+		assertArrayEquals(full.getApproxData(), blockProcessor.getApproxData(), NO_MARGIN);
+		assertArrayEquals(full.getRowAtoms(), blockProcessor.getRowAtoms());
+		//calculated from the atoms on request
+		assertArrayEquals(full.getCoefficients(), blockProcessor.getCoefficients(), COEFFICIENT_MARGIN);
+	}
+	
+	@Test
+	public void givenSampleBlockAsSparseCode() throws BadDimensionsException {
+		final double TOLERANCE = (MAX_INTENSITY*MAX_INTENSITY)/(Math.pow(10, (PSS/10.0)));
+		final int MAX_ITERATIONS = WIDTH_16*WIDTH_16;
+		
+		OMP2D dense = new OMP2D(SAMPLE_DATA, WIDTH_16, 1, TOLERANCE, MAX_ITERATIONS);
+		dense.calcBlock();
+		SparseBlockCode code = dense.getSparseCode();
+		
+		OMP2D blockProcessor = new OMP2D(SAMPLE_DATA, WIDTH_16, 1, TOLERANCE, MAX_ITERATIONS);
+		blockProcessor.setApproximationOnly(true);
+		blockProcessor.setDenseOutput(false);
+		blockProcessor.calcBlock();
+		
+		assertEquals(1, code.getBlockId());
+		assertEquals(WIDTH_16, code.getWidth());
+		assertEquals(dense.getNumCoefficients(), code.getAtomCount(), NO_MARGIN);
+		for(int k = 0; k < code.getAtomCount(); k++) {
+			assertEquals(dense.getRowAtoms()[k], code.getRowAtoms()[k]);
+			assertEquals(dense.getColAtoms()[k], code.getColAtoms()[k]);
+		}
+		assertArrayEquals(dense.getApproxData(), code.toDense(), ROUNDING_MARGIN);
+		
+		assertEquals(dense.getNumCoefficients(), blockProcessor.getNumCoefficients(), NO_MARGIN);
+		assertArrayEquals(blockProcessor.getSparseCode().toDense(), blockProcessor.getApproxData(), NO_MARGIN);
+		assertEquals(SAMPLE_PSNR, blockProcessor.getPSNR(), ROUNDING_MARGIN);
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void givenMismatchedSparseCode() {
+		new SparseBlockCode(0, WIDTH_8, new short[2], new short[2], new double[3]);
+	}
+	
+	@Test
+	public void givenSparseCodesToDecode() throws BadDimensionsException {
+		final double TOLERANCE = (MAX_INTENSITY*MAX_INTENSITY)/(Math.pow(10, (PSS/10.0)));
+		final int MAX_ITERATIONS = WIDTH_16*WIDTH_16;
+		//a 2x2 image of blocks, leaving block 1 out, with a margin too narrow for more blocks
+		final int IMAGE_WIDTH = 2*WIDTH_16 + 5;
+		final int IMAGE_HEIGHT = 2*WIDTH_16 + 3;
+		final byte UNTOUCHED = 7;
+		
+		SparseBlockCode[] codes = new SparseBlockCode[4];
+		OMP2D sample = new OMP2D(SAMPLE_DATA, WIDTH_16, 0, TOLERANCE, MAX_ITERATIONS);
+		sample.calcBlock();
+		codes[0] = sample.getSparseCode();
+		OMP2D flat = new OMP2D(FLAT_DATA_16, WIDTH_16, 3, TOLERANCE, MAX_ITERATIONS);
+		flat.calcBlock();
+		codes[3] = flat.getSparseCode();
+		//beyond the range of a byte both ways, and with repeated column atoms
+		codes[2] = SparseBlockCode.of(2, WIDTH_16, new int[] {1, 4, 9}, new int[] {3, 3, 17}, new double[] {5000, -2000, 120});
+		
+		byte[] bytes = new byte[IMAGE_WIDTH*IMAGE_HEIGHT];
+		short[] shorts = new short[IMAGE_WIDTH*IMAGE_HEIGHT];
+		double[] doubles = new double[IMAGE_WIDTH*IMAGE_HEIGHT];
+		Arrays.fill(bytes, UNTOUCHED);
+		Arrays.fill(shorts, UNTOUCHED);
+		Arrays.fill(doubles, UNTOUCHED);
+		SparseDecoder decoder = new SparseDecoder(new ForkJoinPool(2));
+		decoder.decode(codes, IMAGE_WIDTH, IMAGE_HEIGHT, bytes);
+		decoder.decode(codes, IMAGE_WIDTH, IMAGE_HEIGHT, shorts);
+		decoder.decode(codes, IMAGE_WIDTH, IMAGE_HEIGHT, doubles);
+		
+		for(int id = 0; id < codes.length; id++) {
+			double[] block = codes[id] == null ? null : codes[id].toDense();
+			for(int j = 0; j < WIDTH_16; j++) {
+				for(int i = 0; i < WIDTH_16; i++) {
+					int pixel = ((id / 2)*WIDTH_16 + j)*IMAGE_WIDTH + (id % 2)*WIDTH_16 + i;
+					int expected = block == null ? UNTOUCHED : SparseDecoder.toByte(block[j*WIDTH_16 + i]) & 0xff;
+					assertEquals(expected, bytes[pixel] & 0xff, 1);
+					assertEquals(bytes[pixel] & 0xff, shorts[pixel]);
+					assertEquals(block == null ? UNTOUCHED : block[j*WIDTH_16 + i], doubles[pixel], 1e-9);
+				}
+			}
+		}
+		for(int j = 0; j < IMAGE_HEIGHT; j++) {
+			for(int i = 0; i < IMAGE_WIDTH; i++) {
+				if(i >= 2*WIDTH_16 || j >= 2*WIDTH_16) {
+					assertEquals(UNTOUCHED, bytes[j*IMAGE_WIDTH + i]);
+					assertEquals(UNTOUCHED, doubles[j*IMAGE_WIDTH + i], 0);
+				}
+			}
+		}
+		
+		assertEquals(-1, SparseDecoder.toByte(300));
+		assertEquals((byte) -3, SparseDecoder.toByte(-3.5));
+		assertEquals(12, SparseDecoder.toByte(12.7));
+	}
+	
+	@Test(expected=BadDimensionsException.class)
+	public void givenSparseCodeOutsideImage() throws BadDimensionsException {
+		SparseBlockCode[] codes = new SparseBlockCode[] {
+				SparseBlockCode.of(4, WIDTH_8, new int[] {0}, new int[] {0}, new double[] {1})};
+		new SparseDecoder().decode(codes, 2*WIDTH_8, 2*WIDTH_8, new byte[4*WIDTH_8*WIDTH_8]);
 	}
 	
 	@Test
@@ -206,6 +721,93 @@ public class TestOMP2D {
 		
 		final double psnr = blockProcessor.getPSNR();
 		assertTrue(psnr > NEAR_PERFECT_PSNR);
-	}	
-
+	}
+	
+	@Test
+	public void givenFusedCorrelationSearch() throws BadDimensionsException {
+		Random random = new Random(5);
+		List<Kernels> kernels = new ArrayList<Kernels>();
+		kernels.add(ScalarKernels.INSTANCE);
+		if(Kernels.vector() != null) {
+			kernels.add(Kernels.vector());
+		}
+		
+		for(int width : new int[] {WIDTH_8, WIDTH_16, WIDTH_32}) {
+			OMP2DWorkspace ws = new OMP2DWorkspace(width, 2);
+			double[] noise = new double[width*width];
+			for(int i = 0; i < noise.length; i++) {
+				noise[i] = random.nextInt(256);
+			}
+			double[] flat = width == WIDTH_8 ? FLAT_DATA_8 : width == WIDTH_16 ? FLAT_DATA_16 : FLAT_DATA_32;
+			
+			//every correlation of the empty block ties, so the first must be chosen
+			for(double[] block : new double[][] {noise, flat, new double[width*width]}) {
+				for(Kernels kernel : kernels) {
+					ws.reset(block);
+					DenseCorrelation.INSTANCE.correlate(ws, 0);
+					double unfused = ws.findMaxAbs(0, kernel);
+					double fused = DenseCorrelation.INSTANCE.correlateMaxAbs(ws, 1);
+					
+					assertEquals(unfused, fused, NO_MARGIN);
+					assertEquals(ws.getRowAtom(0), ws.getRowAtom(1));
+					assertEquals(ws.getColAtom(0), ws.getColAtom(1));
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void givenBlockKernelFactory() {
+		for(int width : new int[] {WIDTH_8, WIDTH_16, WIDTH_32, 12}) {
+			assertEquals(width, BlockKernels.forWidth(width).getWidth());
+		}
+		assertSame(BlockKernels.forWidth(WIDTH_16), BlockKernels.forWidth(WIDTH_16));
+	}
+	
+	@Test
+	public void givenSpecialisedBlockKernels() throws BadDimensionsException {
+		final double TOLERANCE = (MAX_INTENSITY*MAX_INTENSITY)/(Math.pow(10, (PSS/10.0)));
+		Random random = new Random(11);
+		BlockParallelism parallelism = new BlockParallelism(new ForkJoinPool(2), 0);
+		
+		for(int width : new int[] {WIDTH_8, WIDTH_16, WIDTH_32}) {
+			final int MAX_ITERATIONS = width*width;
+			double[] noise = new double[width*width];
+			for(int i = 0; i < noise.length; i++) {
+				noise[i] = random.nextInt(256);
+			}
+			double[][] blocks = new double[][] {noise, width == WIDTH_8 ? EXTREME_DATA_8 : width == WIDTH_16 ? SAMPLE_DATA : FLAT_DATA_32};
+			
+			BlockKernels specialised = BlockKernels.forWidth(width);
+			assertNotSame(BlockKernels.generic(width).getClass(), specialised.getClass());
+			OMP2DWorkspace specialisedWorkspace = new OMP2DWorkspace(width, MAX_ITERATIONS, specialised);
+			OMP2DWorkspace genericWorkspace = new OMP2DWorkspace(width, MAX_ITERATIONS, BlockKernels.generic(width));
+			
+			for(double[] block : blocks) {
+				specialisedWorkspace.reset(block);
+				genericWorkspace.reset(block);
+				assertEquals(DenseCorrelation.INSTANCE.correlateMaxAbs(genericWorkspace, 0), 
+						DenseCorrelation.INSTANCE.correlateMaxAbs(specialisedWorkspace, 0), NO_MARGIN);
+				assertEquals(genericWorkspace.getRowAtom(0), specialisedWorkspace.getRowAtom(0));
+				assertEquals(genericWorkspace.getColAtom(0), specialisedWorkspace.getColAtom(0));
+				
+				//the whole search on one thread, and split into ranges of row atoms
+				for(BlockParallelism split : new BlockParallelism[] {null, parallelism}) {
+					OMP2D expected = new OMP2D(block, width, 1, TOLERANCE, MAX_ITERATIONS);
+					expected.setWorkspace(genericWorkspace);
+					expected.setParallelism(split);
+					expected.calcBlock();
+					
+					OMP2D actual = new OMP2D(block, width, 1, TOLERANCE, MAX_ITERATIONS);
+					actual.setWorkspace(specialisedWorkspace);
+					actual.setParallelism(split);
+					actual.calcBlock();
+					
+					assertArrayEquals(expected.getRowAtoms(), actual.getRowAtoms());
+					assertArrayEquals(expected.getColAtoms(), actual.getColAtoms());
+					assertArrayEquals(expected.getApproxData(), actual.getApproxData(), NO_MARGIN);
+				}
+			}
+		}
+	}
 }